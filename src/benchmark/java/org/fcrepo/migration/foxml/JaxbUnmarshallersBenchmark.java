@@ -0,0 +1,121 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the per-object cost of unmarshalling the object properties and DC of a FOXML object, with a new
+ * JAXBContext per call (as before the contexts were cached) and with {@link JaxbUnmarshallers}.
+ * <p>
+ * Run with: mvn clean test-compile exec:java -Pbenchmarks -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.fcrepo.migration.foxml.JaxbUnmarshallersBenchmark
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JaxbUnmarshallersBenchmark {
+
+    private static final String PROPERTIES = "<foxml:objectProperties"
+            + " xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\">"
+            + "<foxml:property NAME=\"info:fedora/fedora-system:def/model#state\" VALUE=\"Active\"/>"
+            + "<foxml:property NAME=\"info:fedora/fedora-system:def/model#label\" VALUE=\"An example object.\"/>"
+            + "<foxml:property NAME=\"info:fedora/fedora-system:def/model#ownerId\" VALUE=\"exampleOwner\"/>"
+            + "<foxml:property NAME=\"info:fedora/fedora-system:def/model#createdDate\""
+            + " VALUE=\"2015-01-27T19:07:33.120Z\"/>"
+            + "<foxml:property NAME=\"info:fedora/fedora-system:def/view#lastModifiedDate\""
+            + " VALUE=\"2015-01-27T20:26:16.998Z\"/>"
+            + "</foxml:objectProperties>";
+
+    private final XMLInputFactory factory = XMLInputFactory.newFactory();
+
+    private byte[] dc;
+
+    /**
+     * Loads the sample DC.
+     * @throws IOException IO exception
+     */
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("dc-sample1.xml")) {
+            dc = IOUtils.toByteArray(is);
+        }
+    }
+
+    /**
+     * The cost per object before the contexts were cached.
+     * @return the parsed DC
+     * @throws JAXBException JAXB exception
+     * @throws XMLStreamException xml stream exception
+     */
+    @Benchmark
+    public DC newContextPerObject() throws JAXBException, XMLStreamException {
+        JAXBContext.newInstance(FoxmlObjectProperties.class).createUnmarshaller()
+                .unmarshal(propertiesReader(), FoxmlObjectProperties.class).getValue();
+        return JAXBContext.newInstance(DC.class).createUnmarshaller()
+                .unmarshal(new StreamSource(new ByteArrayInputStream(dc)), DC.class).getValue();
+    }
+
+    /**
+     * The cost per object with cached contexts and pooled unmarshallers.
+     * @return the parsed DC
+     * @throws JAXBException JAXB exception
+     * @throws XMLStreamException xml stream exception
+     */
+    @Benchmark
+    public DC cachedContext() throws JAXBException, XMLStreamException {
+        JaxbUnmarshallers.unmarshal(propertiesReader(), FoxmlObjectProperties.class);
+        return DC.parseDC(new ByteArrayInputStream(dc));
+    }
+
+    private XMLStreamReader propertiesReader() throws XMLStreamException {
+        final XMLStreamReader reader = factory.createXMLStreamReader(
+                new ByteArrayInputStream(PROPERTIES.getBytes(StandardCharsets.UTF_8)));
+        reader.nextTag();
+        return reader;
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args unused
+     * @throws RunnerException runner exception
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JaxbUnmarshallersBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the time to hash a staged file: read through a stream on one thread (as a datastream is copied), through
+ * memory mapped regions, and pipelined by {@link HashingEngine}, for each algorithm, or pair of algorithms computed in
+ * one pass, and buffer size.
+ * <p>
+ * Run with: mvn clean test-compile exec:java -Pbenchmarks -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.fcrepo.migration.handlers.ocfl.HashingEngineBenchmark
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashingEngineBenchmark {
+
+    @Param({"MD5", "SHA-1", "SHA-256", "SHA-512", "SHA-512+MD5"})
+    String algorithms;
+
+    @Param({"65536", "1048576", "4194304"})
+    int bufferSize;
+
+    @Param({"268435456"})
+    int fileSize;
+
+    private Path file;
+
+    private HashingEngine engine;
+
+    /**
+     * Writes the file to hash.
+     * @throws IOException IO exception
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("hashing-engine-benchmark", null);
+        final byte[] chunk = new byte[1 << 20];
+        final Random random = new Random(1);
+        try (var out = Files.newOutputStream(file)) {
+            for (int written = 0; written < fileSize; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, Math.min(chunk.length, fileSize - written));
+            }
+        }
+        engine = new HashingEngine(null, 0, bufferSize);
+    }
+
+    /**
+     * Deletes the file.
+     * @throws IOException IO exception
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Reads the file through a stream, updating each digest on the reading thread.
+     * @return the digests
+     * @throws IOException IO exception
+     * @throws NoSuchAlgorithmException no such algorithm exception
+     */
+    @Benchmark
+    public Map<String, String> stream() throws IOException, NoSuchAlgorithmException {
+        final byte[] buffer = new byte[bufferSize];
+        final var digestStream = new MultiDigestInputStream(Files.newInputStream(file), digests());
+        try (InputStream in = digestStream) {
+            while (in.read(buffer) >= 0) {
+                // digested as it is read
+            }
+        }
+        return digestStream.hexDigests();
+    }
+
+    /**
+     * Reads the file through memory mapped regions, updating each digest on the calling thread.
+     * @return the digests
+     * @throws IOException IO exception
+     * @throws NoSuchAlgorithmException no such algorithm exception
+     */
+    @Benchmark
+    public Map<String, String> mapped() throws IOException, NoSuchAlgorithmException {
+        return MultiDigestInputStream.digestFile(file, digests());
+    }
+
+    /**
+     * Reads the file on the calling thread while each digest is updated on its own thread.
+     * @return the digests
+     * @throws IOException IO exception
+     * @throws NoSuchAlgorithmException no such algorithm exception
+     */
+    @Benchmark
+    public Map<String, String> pipelined() throws IOException, NoSuchAlgorithmException {
+        return engine.digestFile(file, digests());
+    }
+
+    private Map<String, MessageDigest> digests() throws NoSuchAlgorithmException {
+        final Map<String, MessageDigest> digests = new HashMap<>();
+        for (final String algorithm : algorithms.split("\\+")) {
+            digests.put(algorithm, engine.newDigest(algorithm));
+        }
+        return digests;
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args unused
+     * @throws RunnerException runner exception
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HashingEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
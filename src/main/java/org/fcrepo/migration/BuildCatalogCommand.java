@@ -0,0 +1,51 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.filefilter.RegexFileFilter;
+import org.fcrepo.migration.foxml.FoxmlCatalog;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * Catalogs the objects of a Fedora 3 object store, for migrations run with the --catalog option.
+ */
+@Command(name = "build-catalog", mixinStandardHelpOptions = true,
+        description = "Records the PID, path, size and modification time of every object in a Fedora 3 object store.")
+public class BuildCatalogCommand implements Callable<Integer> {
+
+    @Option(names = {"--objects-dir", "-o"}, required = true, order = 1,
+            description = "Directory containing Fedora 3 objects")
+    private File objectsDir;
+
+    @Option(names = {"--catalog"}, required = true, order = 2,
+            description = "Catalog file to write, replacing any existing catalog")
+    private File catalog;
+
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    @Override
+    public Integer call() throws IOException {
+        if (!objectsDir.isDirectory()) {
+            throw new IllegalArgumentException("objects directory must exist! " + objectsDir.getAbsolutePath());
+        }
+        // the same files as the object sources, i.e. any name that doesn't begin with a "." character
+        final long objects = FoxmlCatalog.build(objectsDir,
+                new RegexFileFilter(Pattern.compile("^[^\\.].*$")), catalog.toPath());
+        spec.commandLine().getOut().printf("Cataloged %d objects in %s%n", objects, catalog);
+        return 0;
+    }
+
+}
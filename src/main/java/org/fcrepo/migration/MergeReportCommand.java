@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Combines the reports written by the shards of a migration (see the --shard option), and checks that every shard
+ * has run to completion.
+ */
+@Command(name = "merge-report", mixinStandardHelpOptions = true,
+        description = "Combines the migration reports of the shards of a migration.")
+public class MergeReportCommand implements Callable<Integer> {
+
+    static final String REPORT_SUFFIX = ".report";
+
+    @Parameters(arity = "1..*", paramLabel = "REPORT",
+            description = "Report files, or directories containing report files (*" + REPORT_SUFFIX + ")")
+    private List<File> reports;
+
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    @Override
+    public Integer call() throws IOException {
+        final PrintWriter out = spec.commandLine().getOut();
+        final Map<String, MigrationReport> shards = new TreeMap<>();
+        final MigrationReport merged = new MigrationReport();
+        for (final Path file : reportFiles()) {
+            final MigrationReport report = MigrationReport.read(file);
+            final String shard = report.getShard() == null ? "unsharded" : report.getShard();
+            if (shards.put(shard, report) != null) {
+                throw new IllegalArgumentException("More than one report for shard " + shard);
+            }
+            out.printf("%-12s %-10s migrated=%d failed=%d skipped=%d unreadable=%d%n", shard,
+                    report.isComplete() ? "complete" : "INCOMPLETE", report.getMigrated(), report.getFailed(),
+                    report.getSkipped(), report.getUnreadable());
+            merged.add(report);
+        }
+
+        final List<String> problems = new ArrayList<>();
+        shards.forEach((shard, report) -> {
+            if (!report.isComplete()) {
+                problems.add("shard " + shard + " did not complete");
+            }
+        });
+        problems.addAll(missingShards(shards.keySet()));
+
+        out.printf("total        migrated=%d failed=%d unreadable=%d%n", merged.getMigrated(), merged.getFailed(),
+                merged.getUnreadable());
+        for (final String pid : merged.getFailedPids()) {
+            out.println("failed-pid=" + pid);
+        }
+        for (final String problem : problems) {
+            out.println("WARNING: " + problem);
+        }
+        out.flush();
+        return problems.isEmpty() ? 0 : 1;
+    }
+
+    private List<Path> reportFiles() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (final File report : reports) {
+            if (report.isDirectory()) {
+                try (final Stream<Path> children = Files.list(report.toPath())) {
+                    files.addAll(children.filter(p -> p.getFileName().toString().endsWith(REPORT_SUFFIX))
+                            .sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(report.toPath());
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No migration reports found in " + reports);
+        }
+        return files;
+    }
+
+    /**
+     * @return a problem for each shard of the shard counts seen that has no report
+     */
+    private static List<String> missingShards(final Iterable<String> shards) {
+        final List<String> problems = new ArrayList<>();
+        final Map<Integer, List<Integer>> seen = new TreeMap<>();
+        for (final String shard : shards) {
+            final String[] parts = shard.split("/");
+            if (parts.length == 2) {
+                seen.computeIfAbsent(Integer.parseInt(parts[1]), k -> new ArrayList<>())
+                        .add(Integer.parseInt(parts[0]));
+            }
+        }
+        if (seen.size() > 1) {
+            problems.add("reports are from migrations split into different numbers of shards " + seen.keySet());
+        }
+        seen.forEach((count, present) -> {
+            for (int i = 1; i <= count; i++) {
+                if (!present.contains(i)) {
+                    problems.add("no report for shard " + i + "/" + count);
+                }
+            }
+        });
+        return problems;
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+/**
+ * Creates the executors used to run migration work concurrently.
+ *
+ * Virtual threads are selected at runtime: the code is compiled for Java 11, so the Java 21 virtual thread API is
+ * looked up reflectively, and a fixed pool of platform threads is used when it is not available.
+ */
+public final class MigrationExecutors {
+
+    private static final Logger LOGGER = getLogger(MigrationExecutors.class);
+
+    private MigrationExecutors() {
+        // static utility class
+    }
+
+    /**
+     * Creates an executor for I/O bound migration tasks.
+     *
+     * @param name the prefix used to name the executor's threads
+     * @param threads the number of platform threads to use when virtual threads are not used
+     * @param virtual whether each task should run on its own virtual thread, if the JVM supports them
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(final String name, final int threads, final boolean virtual) {
+        if (virtual) {
+            final ExecutorService executor = newVirtualThreadExecutor(name);
+            if (executor != null) {
+                LOGGER.debug("Running {} tasks on virtual threads", name);
+                return executor;
+            }
+            LOGGER.warn("Virtual threads are not supported by Java {}, running {} tasks on {} platform threads",
+                    System.getProperty("java.version"), name, threads);
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static ExecutorService newVirtualThreadExecutor(final String name) {
+        try {
+            // Equivalent to Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory())
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(Thread.class.getMethod("ofVirtual").invoke(null), name + "-", 1L);
+            final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            final Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+                    ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            // Older JVMs, or Java 19/20 without --enable-preview
+            LOGGER.trace("Virtual threads are not available", e);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the outcome of the objects of a migration, so that the results of several migrations (such as the shards
+ * of a migration split across processes) can be combined.
+ * <p>
+ * A report is written as lines of "key=value", with a "failed-pid" line for each object that failed to migrate.
+ * </p>
+ */
+public class MigrationReport {
+
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong unreadable = new AtomicLong();
+    private final Queue<String> failedPids = new ConcurrentLinkedQueue<>();
+
+    private String shard;
+
+    private boolean complete;
+
+    /**
+     * Records an object that was migrated.
+     */
+    public void objectMigrated() {
+        migrated.incrementAndGet();
+    }
+
+    /**
+     * Records an object that failed to migrate.
+     * @param pid the PID of the object
+     */
+    public void objectFailed(final String pid) {
+        failed.incrementAndGet();
+        failedPids.add(pid);
+    }
+
+    /**
+     * Records an object that was not migrated because it was not accepted, e.g. it was migrated by an earlier run,
+     * or belongs to another shard.
+     */
+    public void objectSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * Records a FOXML file that could not be read.
+     */
+    public void objectUnreadable() {
+        unreadable.incrementAndGet();
+    }
+
+    /**
+     * @return the number of objects migrated
+     */
+    public long getMigrated() {
+        return migrated.get();
+    }
+
+    /**
+     * @return the number of objects that failed to migrate
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of objects that were not accepted for migration
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the number of FOXML files that could not be read
+     */
+    public long getUnreadable() {
+        return unreadable.get();
+    }
+
+    /**
+     * @return the PIDs of the objects that failed to migrate
+     */
+    public List<String> getFailedPids() {
+        return new ArrayList<>(failedPids);
+    }
+
+    /**
+     * @return the shard the report is for, in the form "i/N", or null if the migration was not sharded
+     */
+    public String getShard() {
+        return shard;
+    }
+
+    /**
+     * @param shard the shard the report is for, in the form "i/N"
+     */
+    public void setShard(final String shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * @return true if the migration ran to the end of its objects
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @param complete whether the migration ran to the end of its objects
+     */
+    public void setComplete(final boolean complete) {
+        this.complete = complete;
+    }
+
+    /**
+     * Adds the counts and failed PIDs of another report to this one.
+     * @param other the other report
+     */
+    public void add(final MigrationReport other) {
+        migrated.addAndGet(other.getMigrated());
+        failed.addAndGet(other.getFailed());
+        skipped.addAndGet(other.getSkipped());
+        unreadable.addAndGet(other.getUnreadable());
+        failedPids.addAll(other.failedPids);
+    }
+
+    /**
+     * Writes the report, replacing the file atomically.
+     * @param file the report file
+     * @throws IOException IO exception
+     */
+    public void write(final Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+            if (shard != null) {
+                writeLine(writer, "shard", shard);
+            }
+            writeLine(writer, "complete", Boolean.toString(complete));
+            writeLine(writer, "migrated", Long.toString(getMigrated()));
+            writeLine(writer, "failed", Long.toString(getFailed()));
+            writeLine(writer, "skipped", Long.toString(getSkipped()));
+            writeLine(writer, "unreadable", Long.toString(getUnreadable()));
+            for (final String pid : failedPids) {
+                writeLine(writer, "failed-pid", pid);
+            }
+        }
+        Files.move(tmp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a report written by {@link #write(Path)}.
+     * @param file the report file
+     * @return the report
+     * @throws IOException IO exception
+     */
+    public static MigrationReport read(final Path file) throws IOException {
+        final MigrationReport report = new MigrationReport();
+        try (final BufferedReader reader = Files.newBufferedReader(file, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.indexOf('=');
+                if (separator < 0) {
+                    continue;
+                }
+                final String value = line.substring(separator + 1);
+                switch (line.substring(0, separator)) {
+                    case "shard":
+                        report.shard = value;
+                        break;
+                    case "complete":
+                        report.complete = Boolean.parseBoolean(value);
+                        break;
+                    case "migrated":
+                        report.migrated.set(Long.parseLong(value));
+                        break;
+                    case "failed":
+                        report.failed.set(Long.parseLong(value));
+                        break;
+                    case "skipped":
+                        report.skipped.set(Long.parseLong(value));
+                        break;
+                    case "unreadable":
+                        report.unreadable.set(Long.parseLong(value));
+                        break;
+                    case "failed-pid":
+                        report.failedPids.add(value);
+                        break;
+                    default:
+                        throw new IOException("Unexpected line in migration report " + file + ": " + line);
+                }
+            }
+        }
+        return report;
+    }
+
+    private static void writeLine(final BufferedWriter writer, final String key, final String value)
+            throws IOException {
+        writer.write(key + "=" + value);
+        writer.newLine();
+    }
+
+}
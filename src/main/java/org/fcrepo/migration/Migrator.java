@@ -9,6 +9,7 @@ package org.fcrepo.migration;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import org.fcrepo.migration.pidlist.ResumePidListManager;
+import org.fcrepo.migration.pidlist.ShardPidListManager;
 import org.fcrepo.migration.pidlist.UserProvidedPidListManager;
 import org.slf4j.Logger;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -20,6 +21,18 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -69,14 +82,28 @@ public class Migrator {
 
     private ResumePidListManager resumePidListManager;
     private UserProvidedPidListManager userProvidedPidListManager;
+    private ShardPidListManager shardPidListManager;
+
+    private final MigrationReport report = new MigrationReport();
 
     private boolean continueOnError;
 
+    private int threads;
+
+    private Supplier<StreamingFedoraObjectHandler> handlerFactory;
+
+    private boolean virtualThreads;
+
+    private int scheduleWindow;
+
+    private ToLongFunction<ObjectInfo> sizeEstimator = Migrator::foxmlSize;
+
     /**
      * the migrator. set limit to -1.
      */
     public Migrator() {
         limit = -1;
+        threads = 1;
     }
 
     /**
@@ -117,6 +144,25 @@ public class Migrator {
         this.resumePidListManager = manager;
     }
 
+    /**
+     * set ShardPidListManager, so that only the PIDs of one shard are migrated
+     *
+     * @param manager the shard
+     */
+    public void setShardPidListManager(final ShardPidListManager manager) {
+        this.shardPidListManager = manager;
+        report.setShard(manager == null ? null : manager.getSpec());
+    }
+
+    /**
+     * get the report of the objects migrated, failed and skipped by this migrator
+     *
+     * @return the report
+     */
+    public MigrationReport getReport() {
+        return report;
+    }
+
     /**
      * set the continue on error flag
      *
@@ -126,6 +172,57 @@ public class Migrator {
         this.continueOnError = flag;
     }
 
+    /**
+     * set the number of objects to migrate concurrently. When greater than one, objects are enumerated
+     * by the calling thread and handed to a pool of worker threads, each of which uses its own handler
+     * obtained from the handler factory.
+     *
+     * @param threads the number of worker threads
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * set the factory used to create a handler for each worker thread. Required when threads is greater
+     * than one, since handlers hold per-object state and cannot be shared between threads.
+     *
+     * @param handlerFactory the handler factory
+     */
+    public void setHandlerFactory(final Supplier<StreamingFedoraObjectHandler> handlerFactory) {
+        this.handlerFactory = handlerFactory;
+    }
+
+    /**
+     * set whether workers run on virtual threads. Only applies when threads is greater than one, and falls back to
+     * platform threads when the JVM does not support virtual threads.
+     *
+     * @param virtualThreads true to run each object migration on its own virtual thread
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * set the number of accepted objects from which the largest is started next. Only applies when threads is
+     * greater than one. Objects are held open until they are started, so the window bounds the number of open
+     * objects in addition to those of the workers.
+     *
+     * @param scheduleWindow the number of objects, or 0 or 1 to start objects in the order of the source
+     */
+    public void setScheduleWindow(final int scheduleWindow) {
+        this.scheduleWindow = scheduleWindow;
+    }
+
+    /**
+     * set how the size of an object is estimated for scheduling. Defaults to the size of its FOXML file.
+     *
+     * @param sizeEstimator a function from an object to its estimated size in bytes
+     */
+    public void setSizeEstimator(final ToLongFunction<ObjectInfo> sizeEstimator) {
+        this.sizeEstimator = sizeEstimator;
+    }
+
     /**
      * The constructor for migrator.
      * @param source the source
@@ -143,9 +240,23 @@ public class Migrator {
      * @throws XMLStreamException xml stream exception
      */
     public void run() throws XMLStreamException {
+        if (threads > 1) {
+            runParallel();
+        } else {
+            final var iterator = source.iterator();
+            try {
+                runSerial(iterator);
+            } finally {
+                closeIterator(iterator);
+            }
+        }
+        report.setComplete(true);
+    }
+
+    private void runSerial(final Iterator<FedoraObjectProcessor> iterator) {
         int index = 0;
 
-        for (final var iterator = source.iterator(); iterator.hasNext();) {
+        while (iterator.hasNext()) {
             try (final var o = nextTimer.record(iterator::next)) {
                 final String pid = o.getObjectInfo().getPid();
                 if (pid != null) {
@@ -159,7 +270,10 @@ public class Migrator {
                         LOGGER.info("Processing \"" + pid + "\"...");
                         try {
                             o.processObject(handler);
+                            report.objectMigrated();
+                            objectCompleted(pid);
                         } catch (Exception ex) {
+                            report.objectFailed(pid);
                             final var message = String.format("MIGRATION_FAILURE: pid=\"%s\", message=\"%s\"",
                                     pid, ex.getMessage());
 
@@ -169,6 +283,8 @@ public class Migrator {
                                 throw new RuntimeException(message, ex);
                             }
                         }
+                    } else {
+                        report.objectSkipped();
                     }
                     if (userProvidedPidListManager != null &&
                             userProvidedPidListManager.finishedProcessingAllPids()) {
@@ -181,6 +297,7 @@ public class Migrator {
                         ex.getMessage());
 
                 if (this.continueOnError) {
+                    report.objectUnreadable();
                     LOGGER.error(message, ex);
                 } else {
                     throw new RuntimeException(message, ex);
@@ -189,6 +306,256 @@ public class Migrator {
         }
     }
 
+    /**
+     * Enumerates objects on the calling thread, applying the limit and the PID list managers in source order,
+     * and migrates the accepted objects on a bounded pool of worker threads.
+     */
+    private void runParallel() {
+        if (handlerFactory == null) {
+            throw new IllegalStateException("A handler factory is required when migrating with more than one thread");
+        }
+
+        LOGGER.info("Migrating objects using {} threads", threads);
+
+        final var iterator = source.iterator();
+        try {
+            runParallel(iterator);
+        } finally {
+            closeIterator(iterator);
+        }
+    }
+
+    private void runParallel(final Iterator<FedoraObjectProcessor> iterator) {
+        final ExecutorService executor = MigrationExecutors.newExecutor("migration-worker", threads, virtualThreads);
+        // Bounds the number of objects that are open but not yet migrated: one per worker plus one queued each
+        final Semaphore inFlight = new Semaphore(threads * 2);
+        final BlockingQueue<StreamingFedoraObjectHandler> handlers = new LinkedBlockingQueue<>();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        // Accepted objects not yet started, largest first, when scheduling by size
+        final PriorityQueue<WaitingObject> waiting = scheduleWindow > 1 ?
+                new PriorityQueue<>(scheduleWindow, Comparator.comparingLong(WaitingObject::getSize).reversed()) :
+                null;
+        int index = 0;
+
+        try {
+            while (iterator.hasNext() && failure.get() == null) {
+                FedoraObjectProcessor o = null;
+                try {
+                    o = nextTimer.record(iterator::next);
+                    final String pid = o.getObjectInfo().getPid();
+                    if (pid != null) {
+                        // Process if limit is '-1', or we have not hit the non-negative 'limit'...
+                        if (!(limit < 0 || index++ < limit)) {
+                            LOGGER.info("Reached processing limit {}", limit);
+                            break;
+                        }
+
+                        if (acceptPid(pid)) {
+                            final FedoraObjectProcessor processor = o;
+                            o = null;
+                            if (waiting == null) {
+                                start(processor, pid, executor, inFlight, handlers, failure);
+                            } else {
+                                waiting.add(new WaitingObject(processor, pid, estimateSize(processor)));
+                                if (waiting.size() >= scheduleWindow) {
+                                    final WaitingObject largest = waiting.poll();
+                                    start(largest.processor, largest.pid, executor, inFlight, handlers, failure);
+                                }
+                            }
+                        } else {
+                            report.objectSkipped();
+                        }
+                        if (userProvidedPidListManager != null &&
+                                userProvidedPidListManager.finishedProcessingAllPids()) {
+                            LOGGER.info("finished processing everything in pidlist - exiting.");
+                            break;
+                        }
+                    }
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    failure.compareAndSet(null, new RuntimeException("Interrupted while migrating objects", ex));
+                } catch (final Exception ex) {
+                    final var message = String.format("MIGRATION_FAILURE: UNREADABLE_OBJECT: message=\"%s\"",
+                            ex.getMessage());
+
+                    if (this.continueOnError) {
+                        report.objectUnreadable();
+                        LOGGER.error(message, ex);
+                    } else {
+                        failure.compareAndSet(null, new RuntimeException(message, ex));
+                    }
+                } finally {
+                    if (o != null) {
+                        o.close();
+                    }
+                }
+            }
+        } finally {
+            if (waiting != null) {
+                startWaiting(waiting, executor, inFlight, handlers, failure);
+            }
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Hands an object to a worker once fewer than the maximum number of objects are in flight. The object is closed
+     * if the wait is interrupted.
+     */
+    private void start(final FedoraObjectProcessor processor,
+                       final String pid,
+                       final ExecutorService executor,
+                       final Semaphore inFlight,
+                       final BlockingQueue<StreamingFedoraObjectHandler> handlers,
+                       final AtomicReference<RuntimeException> failure) throws InterruptedException {
+        try {
+            inFlight.acquire();
+        } catch (final InterruptedException ex) {
+            processor.close();
+            throw ex;
+        }
+        executor.execute(() -> {
+            try {
+                processObject(processor, pid, handlers, failure);
+            } finally {
+                processor.close();
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Starts the objects still waiting at the end of the enumeration, largest first, or closes them if the migration
+     * has failed.
+     */
+    private void startWaiting(final PriorityQueue<WaitingObject> waiting,
+                              final ExecutorService executor,
+                              final Semaphore inFlight,
+                              final BlockingQueue<StreamingFedoraObjectHandler> handlers,
+                              final AtomicReference<RuntimeException> failure) {
+        WaitingObject next;
+        while ((next = waiting.poll()) != null) {
+            if (failure.get() != null) {
+                next.processor.close();
+                continue;
+            }
+            try {
+                start(next.processor, next.pid, executor, inFlight, handlers, failure);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new RuntimeException("Interrupted while migrating objects", ex));
+            }
+        }
+    }
+
+    private long estimateSize(final FedoraObjectProcessor processor) {
+        try {
+            return sizeEstimator.applyAsLong(processor.getObjectInfo());
+        } catch (final RuntimeException ex) {
+            LOGGER.debug("Unable to estimate the size of {}: {}", processor.getObjectInfo().getPid(),
+                    ex.getMessage());
+            return 0;
+        }
+    }
+
+    private static long foxmlSize(final ObjectInfo objectInfo) {
+        try {
+            return objectInfo.getFoxmlPath() == null ? 0 : Files.size(objectInfo.getFoxmlPath());
+        } catch (final IOException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * An accepted object that has not been handed to a worker yet.
+     */
+    private static class WaitingObject {
+
+        private final FedoraObjectProcessor processor;
+        private final String pid;
+        private final long size;
+
+        WaitingObject(final FedoraObjectProcessor processor, final String pid, final long size) {
+            this.processor = processor;
+            this.pid = pid;
+            this.size = size;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+
+    private void processObject(final FedoraObjectProcessor processor,
+                               final String pid,
+                               final BlockingQueue<StreamingFedoraObjectHandler> handlers,
+                               final AtomicReference<RuntimeException> failure) {
+        // Once a failure has stopped the migration, drain the remaining queued objects without migrating them
+        if (failure.get() != null) {
+            return;
+        }
+
+        // Handlers hold per-object state, so each one is borrowed by a single worker at a time
+        StreamingFedoraObjectHandler objectHandler = handlers.poll();
+        if (objectHandler == null) {
+            objectHandler = handlerFactory.get();
+        }
+
+        LOGGER.info("Processing \"" + pid + "\"...");
+        try {
+            processor.processObject(objectHandler);
+            report.objectMigrated();
+            objectCompleted(pid);
+        } catch (Exception ex) {
+            report.objectFailed(pid);
+            final var message = String.format("MIGRATION_FAILURE: pid=\"%s\", message=\"%s\"",
+                    pid, ex.getMessage());
+
+            if (this.continueOnError) {
+                LOGGER.error(message, ex);
+            } else {
+                failure.compareAndSet(null, new RuntimeException(message, ex));
+            }
+        } finally {
+            handlers.offer(objectHandler);
+        }
+    }
+
+    /**
+     * Releases the objects an iterator may have opened ahead of the migration, when it is abandoned early.
+     */
+    private static void closeIterator(final Iterator<FedoraObjectProcessor> iterator) {
+        if (iterator instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) iterator).close();
+            } catch (final Exception e) {
+                LOGGER.warn("Failed to close the object source iterator", e);
+            }
+        }
+    }
+
+    private static void awaitTermination(final ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+                LOGGER.debug("Waiting for in-flight objects to finish migrating");
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private boolean acceptPid(final String pid) {
         // If any manager DOES NOT accept the PID, return false
         // check user pid list first, so it gets registered in the UserProvidedPidListManager as an accepted pid
@@ -197,6 +564,10 @@ public class Migrator {
         if (userProvidedPidListManager != null && !userProvidedPidListManager.accept(pid)) {
             return false;
         }
+        // check the shard before the resume manager, which only keeps track of the PIDs of this shard
+        if (shardPidListManager != null && !shardPidListManager.accept(pid)) {
+            return false;
+        }
         if (resumePidListManager != null && !resumePidListManager.accept(pid)) {
             return false;
         }
@@ -204,6 +575,13 @@ public class Migrator {
         return true;
     }
 
+    private void objectCompleted(final String pid) {
+        // only migrated objects are recorded, so objects that failed are retried when the migration is resumed
+        if (resumePidListManager != null) {
+            resumePidListManager.completed(pid);
+        }
+    }
+
     private static void printHelp() throws IOException {
         final StringBuilder sb = new StringBuilder();
         sb.append("============================\n");
@@ -28,7 +28,9 @@ import io.ocfl.core.extension.storage.layout.config.HashedNTupleLayoutConfig;
 import io.ocfl.core.path.mapper.LogicalPathMappers;
 import io.ocfl.core.storage.OcflStorageBuilder;
 import org.apache.commons.lang3.SystemUtils;
+import org.fcrepo.migration.handlers.ocfl.HashingEngine;
 import org.fcrepo.migration.handlers.ocfl.PlainOcflObjectSessionFactory;
+import org.fcrepo.migration.handlers.ocfl.StagingMode;
 import org.fcrepo.storage.ocfl.CommitType;
 import org.fcrepo.storage.ocfl.DefaultOcflObjectSessionFactory;
 import org.fcrepo.storage.ocfl.OcflObjectSessionFactory;
@@ -54,6 +56,8 @@ public class OcflSessionFactoryFactoryBean implements FactoryBean<OcflObjectSess
     private final String userUri;
     private final DigestAlgorithm digestAlgorithm;
     private final boolean disableChecksumValidation;
+    private StagingMode stagingMode = StagingMode.STREAM;
+    private HashingEngine hashingEngine = HashingEngine.getDefault();
 
     /**
      * @param ocflRoot OCFL storage root
@@ -98,6 +102,20 @@ public class OcflSessionFactoryFactoryBean implements FactoryBean<OcflObjectSess
                 DigestAlgorithmRegistry.sha512, disableChecksumValidation);
     }
 
+    /**
+     * @param stagingMode how plain OCFL sessions stage content that is stored in a file
+     */
+    public void setStagingMode(final StagingMode stagingMode) {
+        this.stagingMode = stagingMode;
+    }
+
+    /**
+     * @param hashingEngine the engine that plain OCFL sessions hash content with as they stage it
+     */
+    public void setHashingEngine(final HashingEngine hashingEngine) {
+        this.hashingEngine = hashingEngine;
+    }
+
     @Override
     public OcflObjectSessionFactory getObject() {
         final var logicalPathMapper = SystemUtils.IS_OS_WINDOWS ?
@@ -130,15 +148,23 @@ public class OcflSessionFactoryFactoryBean implements FactoryBean<OcflObjectSess
                     .expireAfterAccess(Duration.ofMinutes(10))
                     .build();
 
-            return new DefaultOcflObjectSessionFactory(ocflRepo, stagingDir, objectMapper,
+            final var sessionFactory = new DefaultOcflObjectSessionFactory(ocflRepo, stagingDir, objectMapper,
                     new CaffeineCache<>(headersCache),
                     new CaffeineCache<>(rootIdCache),
                     CommitType.NEW_VERSION,
                     "Generated by Fedora 3 to Fedora 6 migration", user, userUri);
+            // the session does not read the staged content again to compute its OCFL digest, which is only
+            // enabled when the Fedora 3 digests are validated as the content is written
+            sessionFactory.useUnsafeWrite(!disableChecksumValidation);
+            return sessionFactory;
         } else {
-            return new PlainOcflObjectSessionFactory(ocflRepo, stagingDir,
+            final var sessionFactory = new PlainOcflObjectSessionFactory(ocflRepo, stagingDir,
                     "Generated by Fedora 3 to Fedora 6 migration", user, userUri,
                     disableChecksumValidation);
+            sessionFactory.setStagingMode(stagingMode);
+            sessionFactory.setDigestAlgorithm(digestAlgorithm);
+            sessionFactory.setHashingEngine(hashingEngine);
+            return sessionFactory;
         }
     }
 
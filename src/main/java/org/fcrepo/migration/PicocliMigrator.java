@@ -12,18 +12,35 @@ import static org.slf4j.LoggerFactory.getLogger;
 import static picocli.CommandLine.Help.Visibility.ALWAYS;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.apache.jena.query.ARQ;
 import org.fcrepo.migration.foxml.AkubraFSIDResolver;
+import org.fcrepo.migration.foxml.AkubraHashPathIDResolver;
+import org.fcrepo.migration.foxml.CatalogFoxmlObjectSource;
 import org.fcrepo.migration.foxml.ArchiveExportedFoxmlDirectoryObjectSource;
+import org.fcrepo.migration.foxml.DirectoryScanningIDResolver.IndexType;
+import org.fcrepo.migration.foxml.FoxmlSizeEstimator;
+import org.fcrepo.migration.foxml.HttpClientURLFetcher;
 import org.fcrepo.migration.foxml.InternalIDResolver;
 import org.fcrepo.migration.foxml.LegacyFSIDResolver;
 import org.fcrepo.migration.foxml.NativeFoxmlDirectoryObjectSource;
+import org.fcrepo.migration.foxml.PidListFoxmlObjectSource;
+import org.fcrepo.migration.foxml.URLContentCache;
 import org.fcrepo.migration.handlers.ObjectAbstractionStreamingFedoraObjectHandler;
 import org.fcrepo.migration.handlers.ocfl.ArchiveGroupHandler;
+import org.fcrepo.migration.handlers.ocfl.HashingEngine;
+import org.fcrepo.migration.handlers.ocfl.StagingMode;
 import org.fcrepo.migration.metrics.PrometheusActuator;
 import org.fcrepo.migration.pidlist.ResumePidListManager;
+import org.fcrepo.migration.pidlist.ShardPidListManager;
 import org.fcrepo.migration.pidlist.UserProvidedPidListManager;
 import org.fcrepo.storage.ocfl.OcflObjectSessionFactory;
 
@@ -54,6 +71,11 @@ public class PicocliMigrator implements Callable<Integer> {
 
     private static final Logger LOGGER = getLogger(PicocliMigrator.class);
 
+    // the number of objects per thread that are held open for --largest-first without a catalog, up to a total that
+    // stays well within the usual limit on open files
+    private static final int SCHEDULE_WINDOW_PER_THREAD = 16;
+    private static final int MAX_SCHEDULE_WINDOW = 256;
+
     private enum F3SourceTypes {
         AKUBRA, LEGACY, EXPORTED;
 
@@ -124,7 +146,8 @@ public class PicocliMigrator implements Callable<Integer> {
     private boolean continueOnError;
 
     @Option(names = {"--pid-file", "-p"}, order = 26,
-            description = "PID file listing which Fedora 3 objects to migrate")
+            description = "PID file listing which Fedora 3 objects to migrate. With --source-type 'akubra' or"
+                + " 'legacy', only the FOXML files of the listed objects are read.")
     private File pidFile;
 
     @Option(names = {"--extensions", "-x"}, defaultValue = "false", showDefaultValue = ALWAYS, order = 27,
@@ -165,17 +188,129 @@ public class PicocliMigrator implements Callable<Integer> {
             description = "Migrate only the HEAD of each datastream")
     private boolean headOnly;
 
+    @Option(names = {"--threads", "-T"}, defaultValue = "1", showDefaultValue = ALWAYS, order = 37,
+            description = "Number of objects to migrate concurrently, each on its own worker thread.")
+    private int threads;
+
+    @Option(names = {"--virtual-threads"}, defaultValue = "false", showDefaultValue = ALWAYS, order = 38,
+            description = "Run the --threads workers on virtual threads (Java 21+), falling back to platform threads"
+                + " on older JVMs.")
+    private boolean virtualThreads;
+
+    @Option(names = {"--datastream-threads"}, defaultValue = "1", showDefaultValue = ALWAYS, order = 39,
+            description = "Number of datastreams of an object version to write and commit concurrently. Only used"
+                + " with --atomic-resources.")
+    private int datastreamThreads;
+
+    @Option(names = {"--binary-content-threshold"}, defaultValue = "0", showDefaultValue = ALWAYS, order = 40,
+            description = "Size in bytes up to which base64 encoded binaryContent in FOXML is decoded into memory"
+                + " instead of a temporary file.")
+    private int binaryContentThreshold;
+
+    @Option(names = {"--index-type"}, defaultValue = "LUCENE", showDefaultValue = ALWAYS, order = 41,
+            description = "Type of index used to resolve datastream files (used with --source-type 'akubra' or"
+                + " 'legacy'). Choices: LUCENE | HASH")
+    private IndexType indexType;
+
+    @Option(names = {"--refresh-index"}, order = 42,
+            description = "Bring an existing datastream index up to date by rescanning only the directories that"
+                + " changed since it was built or last refreshed (used with --source-type 'akubra' or 'legacy').")
+    private boolean refreshIndex;
+
+    @Option(names = {"--akubra-path-pattern"}, order = 43,
+            description = "Path pattern of the Akubra datastream store, e.g. '##'. When set, datastream files are"
+                + " located by computing their paths instead of indexing the store (used with --source-type"
+                + " 'akubra').")
+    private String akubraPathPattern;
+
+    @Option(names = {"--shard"}, order = 44,
+            description = "Migrate only the PIDs of shard i of N (e.g. 2/4), chosen by a stable hash of the PID. Each"
+                + " shard keeps its own resume state, staging directory and report in the working directory.")
+    private String shard;
+
+    @Option(names = {"--catalog"}, order = 45,
+            description = "Catalog of the object store, written by the build-catalog command. The objects are taken"
+                + " from the catalog instead of walking the object store (used with --source-type 'akubra' or"
+                + " 'legacy').")
+    private File catalog;
+
+    @Option(names = {"--largest-first"}, order = 46,
+            description = "Start the largest objects first, by the size of their FOXML and the declared sizes of their"
+                + " managed datastreams. With --catalog, all the objects are ordered by size; otherwise the largest"
+                + " of the next " + SCHEDULE_WINDOW_PER_THREAD + " objects per thread, up to " + MAX_SCHEDULE_WINDOW
+                + " objects, is started next (used with --threads).")
+    private boolean largestFirst;
+
+    @Option(names = {"--http-connections"}, defaultValue = "20", showDefaultValue = ALWAYS, order = 47,
+            description = "Number of connections kept open to each host that external (E) and redirect (R) datastream"
+                + " content is fetched from. Should be at least the number of objects migrated at once.")
+    private int httpConnections;
+
+    @Option(names = {"--http-timeout"}, defaultValue = "60", showDefaultValue = ALWAYS, order = 48,
+            description = "Timeout in seconds to connect to a host, to wait for data, and to wait for a free"
+                + " connection when fetching datastream content.")
+    private int httpTimeout;
+
+    @Option(names = {"--http-retries"}, defaultValue = "3", showDefaultValue = ALWAYS, order = 49,
+            description = "Number of times a failed or temporarily unavailable fetch of datastream content is"
+                + " retried, with exponential backoff.")
+    private int httpRetries;
+
+    @Option(names = {"--url-cache-size"}, defaultValue = "0", showDefaultValue = ALWAYS, order = 50,
+            description = "Size in megabytes of a cache of external (E) and redirect (R) datastream content in the"
+                + " working directory, so that content referenced by several versions or fetched by an earlier run"
+                + " is not transferred again. 0 disables the cache.")
+    private long urlCacheSize;
+
+    @Option(names = {"--staging-mode"}, defaultValue = "STREAM", showDefaultValue = ALWAYS, order = 51,
+            description = "Only use this for PLAIN_OCFL migrations: How datastream content held in files, such as"
+                + " managed datastreams, is staged. STREAM copies it through the migration, TRANSFER copies it within"
+                + " the kernel, and LINK hard links the Fedora 3 file when the staging directory is on the same"
+                + " filesystem. Choices: STREAM | TRANSFER | LINK")
+    private StagingMode stagingMode;
+
+    @Option(names = {"--digest-provider"}, order = 52,
+            description = "Name of the Java security provider that datastream content is hashed with, such as a native"
+                + " provider installed in the JVM. By default each digest algorithm uses the fastest installed"
+                + " provider that implements it.")
+    private String digestProvider;
+
+    @Option(names = {"--ignore-legacy-resume"}, order = 53,
+            description = "With --resume, start a new resume journal when the pid directory only has the resume.txt"
+                + " of an earlier release, and migrate all objects again. Otherwise such a resume fails.")
+    private boolean ignoreLegacyResume;
+
+    @Option(names = {"--akubra-object-path-pattern"}, defaultValue = AkubraHashPathIDResolver.DEFAULT_PATH_PATTERN,
+            showDefaultValue = ALWAYS, order = 54,
+            description = "Path pattern of the Akubra object store, which locates the FOXML files of the objects"
+                + " listed by --pid-file (used with --source-type 'akubra').")
+    private String akubraObjectPathPattern;
+
     @Option(names = {"--debug"}, order = 34, description = "Enables debug logging")
     private boolean debug;
 
     private File indexDir;
 
+    private HttpClientURLFetcher fetcher;
+
+    private URLContentCache urlCache;
+
     private File ocflStorageDir;
 
     /**
      * @param args Command line arguments
      */
     public static void main(final String[] args) {
+        // merge-report and build-catalog are dispatched here, as a subcommand would require the migration's options
+        if (args.length > 0 && args[0].equals("merge-report")) {
+            new CommandLine(new MergeReportCommand()).execute(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("build-catalog")) {
+            new CommandLine(new BuildCatalogCommand()).execute(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         final PicocliMigrator migrator = new PicocliMigrator();
         final CommandLine cmd = new CommandLine(migrator);
         cmd.registerConverter(F3SourceTypes.class, F3SourceTypes::toType);
@@ -224,14 +359,27 @@ public class PicocliMigrator implements Callable<Integer> {
             throw new IllegalArgumentException("Can't change the ID Prefix for FEDORA_OCFL migrations");
         }
 
+        if (migrationType == MigrationType.FEDORA_OCFL && stagingMode != StagingMode.STREAM) {
+            throw new IllegalArgumentException("The staging mode can only be changed for PLAIN_OCFL migrations");
+        }
+
         if (!digestAlgorithm.equals("sha512") && !digestAlgorithm.equalsIgnoreCase("sha256")) {
             throw new IllegalArgumentException("Invalid algorithm specified, must be one of sha512 or sha256");
         }
 
+        expressionTrue(threads > 0, threads, "threads must be greater than 0");
+        expressionTrue(datastreamThreads > 0, datastreamThreads, "datastream-threads must be greater than 0");
+        expressionTrue(binaryContentThreshold >= 0, binaryContentThreshold,
+                "binary-content-threshold must not be negative");
+
         if (headOnly && atomicResources) {
             throw new IllegalArgumentException("Atomic migrations currently do not support the head only option");
         }
 
+        if (datastreamThreads > 1 && !atomicResources) {
+            LOGGER.warn("--datastream-threads is only used with --atomic-resources, writing datastreams serially");
+        }
+
         final DigestAlgorithm algorithm = DigestAlgorithmRegistry.getAlgorithm(digestAlgorithm);
         notNull(algorithm, "Invalid algorithm specified, must be one of sha512 or sha256");
 
@@ -260,26 +408,48 @@ public class PicocliMigrator implements Callable<Integer> {
             ocflStorageDir = targetDir;
         }
 
+        // Shards of a migration may share a working directory, so each keeps its state in its own directories
+        final ShardPidListManager shardManager = shard == null ? null : ShardPidListManager.parse(shard);
+        final String stateName = shardManager == null ? null : shardManager.getName();
+
         // Create Staging dir
-        final File ocflStagingDir = new File(workingDir, "staging");
+        final File ocflStagingDir = stateName == null ? new File(workingDir, "staging") :
+                new File(new File(workingDir, "staging"), stateName);
         if (!ocflStagingDir.exists()) {
             ocflStagingDir.mkdirs();
         }
 
         // Create PID list dir
-        final File pidDir = new File(workingDir, "pid");
+        final File pidDir = stateName == null ? new File(workingDir, "pid") :
+                new File(new File(workingDir, "pid"), stateName);
         if (!pidDir.exists()) {
             pidDir.mkdirs();
         }
 
+        final Path reportFile = workingDir.toPath().resolve("reports")
+                .resolve((stateName == null ? "migration" : stateName) + MergeReportCommand.REPORT_SUFFIX);
+
+        // shared by all the objects, so that connections to the hosts of external content are reused
+        fetcher = new HttpClientURLFetcher(httpConnections, (int) TimeUnit.SECONDS.toMillis(httpTimeout), httpRetries);
+        if (urlCacheSize > 0) {
+            final Path urlCacheDir = stateName == null ? workingDir.toPath().resolve("url-cache") :
+                    workingDir.toPath().resolve("url-cache").resolve(stateName);
+            urlCache = new URLContentCache(urlCacheDir, urlCacheSize * 1024 * 1024);
+            fetcher.setCache(urlCache);
+        }
+
         // Which F3 source are we using? - verify associated options
         final ObjectSource objectSource;
         InternalIDResolver idResolver = null;
+        InternalIDResolver objectResolver = null;
         switch (f3SourceType) {
             case EXPORTED:
                 notNull(f3ExportedDir, "f3ExportDir must be used with 'exported' source!");
 
-                objectSource = new ArchiveExportedFoxmlDirectoryObjectSource(f3ExportedDir, f3hostname);
+                final var exportedSource = new ArchiveExportedFoxmlDirectoryObjectSource(f3ExportedDir, f3hostname);
+                exportedSource.setFetcher(fetcher);
+                exportedSource.setBinaryContentThreshold(binaryContentThreshold);
+                objectSource = exportedSource;
                 break;
             case AKUBRA:
                 notNull(f3DatastreamsDir, "f3DatastreamsDir must be used with 'akubra' or 'legacy' source!");
@@ -287,8 +457,18 @@ public class PicocliMigrator implements Callable<Integer> {
                 expressionTrue(f3ObjectsDir.exists(), f3ObjectsDir, "f3ObjectsDir must exist! " +
                         f3ObjectsDir.getAbsolutePath());
 
-                idResolver = new AkubraFSIDResolver(indexDir, f3DatastreamsDir);
-                objectSource = new NativeFoxmlDirectoryObjectSource(f3ObjectsDir, idResolver, f3hostname);
+                if (akubraPathPattern != null) {
+                    idResolver = new AkubraHashPathIDResolver(f3DatastreamsDir, akubraPathPattern);
+                } else {
+                    idResolver = new AkubraFSIDResolver(indexDir, f3DatastreamsDir, indexType, refreshIndex);
+                }
+                if (pidFile != null) {
+                    // the path of each listed object is computed, so only the listed objects are read
+                    objectResolver = new AkubraHashPathIDResolver(f3ObjectsDir, akubraObjectPathPattern);
+                    objectSource = pidListSource(objectResolver, idResolver);
+                } else {
+                    objectSource = nativeSource(idResolver, shardManager);
+                }
                 break;
             case LEGACY:
                 notNull(f3DatastreamsDir, "f3DatastreamsDir must be used with 'akubra' or 'legacy' source!");
@@ -296,8 +476,19 @@ public class PicocliMigrator implements Callable<Integer> {
                 expressionTrue(f3ObjectsDir.exists(), f3ObjectsDir, "f3ObjectsDir must exist! " +
                         f3ObjectsDir.getAbsolutePath());
 
-                idResolver = new LegacyFSIDResolver(indexDir, f3DatastreamsDir);
-                objectSource = new NativeFoxmlDirectoryObjectSource(f3ObjectsDir, idResolver, f3hostname);
+                if (akubraPathPattern != null) {
+                    LOGGER.warn("--akubra-path-pattern is ignored for 'legacy' sources, whose datastream paths"
+                            + " cannot be computed from their ids");
+                }
+                idResolver = new LegacyFSIDResolver(indexDir, f3DatastreamsDir, indexType, refreshIndex);
+                if (pidFile != null) {
+                    // the listed objects are looked up in an index of the object store, kept for later runs
+                    objectResolver = new LegacyFSIDResolver(new File(workingDir, "object-index"), f3ObjectsDir,
+                            indexType, refreshIndex);
+                    objectSource = pidListSource(objectResolver, idResolver);
+                } else {
+                    objectSource = nativeSource(idResolver, shardManager);
+                }
                 break;
             default:
                 throw new RuntimeException("Should never happen");
@@ -307,22 +498,35 @@ public class PicocliMigrator implements Callable<Integer> {
         final PrometheusActuator actuator = new PrometheusActuator(enableMetrics);
         actuator.start();
 
-        final OcflObjectSessionFactory ocflSessionFactory = new OcflSessionFactoryFactoryBean(ocflStorageDir.toPath(),
-                ocflStagingDir.toPath(), migrationType, user, userUri, algorithm, disableChecksumValidation)
-                .getObject();
-
-        final FedoraObjectVersionHandler archiveGroupHandler =
-                new ArchiveGroupHandler(
-                        ocflSessionFactory, migrationType,
-                        atomicResources ? ResourceMigrationType.ATOMIC : ResourceMigrationType.ARCHIVAL,
-                        addExtensions, deleteInactive, foxmlFile,
-                        user, idPrefix, headOnly, disableChecksumValidation, disableDc);
-        final StreamingFedoraObjectHandler objectHandler = new ObjectAbstractionStreamingFedoraObjectHandler(
-                archiveGroupHandler);
+        final var ocflSessionFactoryBean = new OcflSessionFactoryFactoryBean(ocflStorageDir.toPath(),
+                ocflStagingDir.toPath(), migrationType, user, userUri, algorithm, disableChecksumValidation);
+        ocflSessionFactoryBean.setStagingMode(stagingMode);
+        final HashingEngine hashingEngine = digestProvider == null ? HashingEngine.getDefault() :
+                new HashingEngine(digestProvider, HashingEngine.DEFAULT_PIPELINE_THRESHOLD,
+                        HashingEngine.DEFAULT_BUFFER_SIZE);
+        ocflSessionFactoryBean.setHashingEngine(hashingEngine);
+        final OcflObjectSessionFactory ocflSessionFactory = ocflSessionFactoryBean.getObject();
+
+        // Datastreams of atomic resources are separate OCFL objects, which may be written concurrently
+        final ExecutorService datastreamExecutor = atomicResources && datastreamThreads > 1 ?
+                MigrationExecutors.newExecutor("datastream-writer", datastreamThreads * threads, virtualThreads) :
+                null;
+
+        // Each worker thread needs its own handler, as the handlers hold per-object state
+        final Supplier<StreamingFedoraObjectHandler> handlerFactory = () -> {
+            final ArchiveGroupHandler archiveGroupHandler =
+                    new ArchiveGroupHandler(
+                            ocflSessionFactory, migrationType,
+                            atomicResources ? ResourceMigrationType.ATOMIC : ResourceMigrationType.ARCHIVAL,
+                            addExtensions, deleteInactive, foxmlFile,
+                            user, idPrefix, headOnly, disableChecksumValidation, disableDc, datastreamExecutor);
+            archiveGroupHandler.setHashingEngine(hashingEngine);
+            return new ObjectAbstractionStreamingFedoraObjectHandler(archiveGroupHandler);
+        };
 
         // PID-list-managers
         // - Resume PID manager: the second arg is "acceptAll". If resuming, we do not "acceptAll")
-        final ResumePidListManager resumeManager = new ResumePidListManager(pidDir, !resume);
+        final ResumePidListManager resumeManager = new ResumePidListManager(pidDir, !resume, ignoreLegacyResume);
 
         // - PID-list manager
         final UserProvidedPidListManager pidListManager = new UserProvidedPidListManager(pidFile);
@@ -330,10 +534,24 @@ public class PicocliMigrator implements Callable<Integer> {
         final Migrator migrator = new Migrator();
         migrator.setLimit(objectLimit);
         migrator.setSource(objectSource);
-        migrator.setHandler(objectHandler);
+        migrator.setHandler(handlerFactory.get());
+        migrator.setHandlerFactory(handlerFactory);
+        migrator.setThreads(threads);
+        migrator.setVirtualThreads(virtualThreads);
         migrator.setResumePidListManager(resumeManager);
         migrator.setUserProvidedPidListManager(pidListManager);
+        migrator.setShardPidListManager(shardManager);
         migrator.setContinueOnError(continueOnError);
+        if (largestFirst && catalog == null) {
+            migrator.setScheduleWindow(Math.min(threads * SCHEDULE_WINDOW_PER_THREAD, MAX_SCHEDULE_WINDOW));
+            migrator.setSizeEstimator(objectInfo -> {
+                try {
+                    return FoxmlSizeEstimator.estimate(objectInfo.getFoxmlPath());
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
 
         // for some reason ARQ does not implicitly init on some systems
         ARQ.init();
@@ -341,15 +559,66 @@ public class PicocliMigrator implements Callable<Integer> {
         try {
             migrator.run();
         } finally {
-            ocflSessionFactory.close();
-            if (idResolver != null) {
-                idResolver.close();
+            // the report is written first, and failing to write it is only logged, so it is written whatever fails
+            // to close below, and does not hide a failure of the migration
+            writeReport(migrator.getReport(), reportFile);
+            if (datastreamExecutor != null) {
+                datastreamExecutor.shutdown();
+            }
+            try {
+                // the journal is synced first, so the migrated objects are recorded even if closing another fails
+                resumeManager.close();
+            } finally {
+                ocflSessionFactory.close();
+                if (idResolver != null) {
+                    idResolver.close();
+                }
+                if (objectResolver != null) {
+                    objectResolver.close();
+                }
+                fetcher.close();
+                if (urlCache != null) {
+                    urlCache.close();
+                }
+                FileUtils.deleteDirectory(ocflStagingDir);
+                actuator.stop();
             }
-            FileUtils.deleteDirectory(ocflStagingDir);
-            actuator.stop();
         }
 
         return 0;
     }
 
+    private static void writeReport(final MigrationReport report, final Path reportFile) {
+        try {
+            report.write(reportFile);
+        } catch (final IOException | RuntimeException e) {
+            LOGGER.error("Failed to write the migration report to {}", reportFile, e);
+        }
+    }
+
+    private ObjectSource pidListSource(final InternalIDResolver objectResolver, final InternalIDResolver idResolver) {
+        final var source = new PidListFoxmlObjectSource(pidFile, objectResolver, idResolver, f3hostname);
+        source.setFetcher(fetcher);
+        source.setBinaryContentThreshold(binaryContentThreshold);
+        return source;
+    }
+
+    private ObjectSource nativeSource(final InternalIDResolver idResolver, final ShardPidListManager shardManager) {
+        if (catalog != null) {
+            // the objects of other shards are left out before their FOXML files are opened
+            final var source = new CatalogFoxmlObjectSource(catalog.toPath(), idResolver, f3hostname);
+            source.setFetcher(fetcher);
+            if (shardManager != null) {
+                source.setFilter(entry -> shardManager.accept(entry.getPid()));
+            }
+            source.setLargestFirst(largestFirst);
+            source.setBinaryContentThreshold(binaryContentThreshold);
+            return source;
+        }
+        final var source = new NativeFoxmlDirectoryObjectSource(f3ObjectsDir, idResolver, f3hostname);
+        source.setFetcher(fetcher);
+        source.setBinaryContentThreshold(binaryContentThreshold);
+        return source;
+    }
+
 }
@@ -0,0 +1,162 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+
+/**
+ * An InternalIDResolver for AkubraFS datastream stores that computes the location of each datastream file from its
+ * internal id, as Akubra's HashPathIdMapper does, so that no index of the store has to be built.
+ * <p>
+ * The file for an internal id is named with the encoded "info:fedora/" URI of the datastream version, within
+ * directories named by the leading hex digits of the MD5 hash of that URI, as laid out by the path pattern (for
+ * example "##", the Fedora default, or "#/##"). When the file is not found at the location given by the configured
+ * pattern, the directories named by prefixes of the hash are probed to a bounded depth, which finds files stored with
+ * any other pattern.
+ * </p>
+ */
+public class AkubraHashPathIDResolver implements InternalIDResolver {
+
+    private static final Logger LOGGER = getLogger(AkubraHashPathIDResolver.class);
+
+    /**
+     * The path pattern of the datastream store in a default Fedora 3 installation.
+     */
+    public static final String DEFAULT_PATH_PATTERN = "##";
+
+    // the probe follows at most this many directories, each named with at most this many hex digits
+    private static final int MAX_PROBE_DEPTH = 4;
+    private static final int MAX_PROBE_DIGITS = 4;
+
+    private final File dsRoot;
+
+    private final String pathPattern;
+
+    /**
+     * Constructor for a store with the default path pattern.
+     * @param dsRoot the root directory of the AkubraFS datastream store.
+     */
+    public AkubraHashPathIDResolver(final File dsRoot) {
+        this(dsRoot, DEFAULT_PATH_PATTERN);
+    }
+
+    /**
+     * Constructor.
+     * @param dsRoot the root directory of the AkubraFS datastream store.
+     * @param pathPattern the path pattern of the store, made of '#' and '/' characters
+     */
+    public AkubraHashPathIDResolver(final File dsRoot, final String pathPattern) {
+        if (!pathPattern.matches("[#/]*") || pathPattern.startsWith("/") || pathPattern.endsWith("/")
+                || pathPattern.contains("//")) {
+            throw new IllegalArgumentException("Invalid Akubra path pattern \"" + pathPattern + "\"!");
+        }
+        this.dsRoot = dsRoot;
+        this.pathPattern = pathPattern;
+    }
+
+    @Override
+    public CachedContent resolveInternalID(final String id) {
+        final String uri = "info:fedora/" + id.replace('+', '/');
+        final String hash = DigestUtils.md5Hex(uri);
+        final String name = encode(uri);
+
+        final File file = new File(new File(dsRoot, hashPath(hash)), name);
+        if (file.isFile()) {
+            return new FileCachedContent(file);
+        }
+
+        final File probed = probe(dsRoot, hash, 0, name, 0);
+        if (probed == null) {
+            throw new RuntimeException("Unable to resolve internal ID \"" + id + "\"!");
+        }
+        LOGGER.debug("Found \"{}\" outside of the configured path pattern at {}", id, probed.getPath());
+        return new FileCachedContent(probed);
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    /**
+     * @return the directories for a hash, following the path pattern
+     */
+    private String hashPath(final String hash) {
+        final StringBuilder path = new StringBuilder(pathPattern.length());
+        int digit = 0;
+        for (final char c : pathPattern.toCharArray()) {
+            path.append(c == '#' ? hash.charAt(digit++) : File.separatorChar);
+        }
+        return path.toString();
+    }
+
+    /**
+     * Looks for the file in a directory, then in each subdirectory named by the next one to MAX_PROBE_DIGITS hex
+     * digits of the hash.
+     */
+    private static File probe(final File dir, final String hash, final int offset, final String name,
+                              final int depth) {
+        final File file = new File(dir, name);
+        if (file.isFile()) {
+            return file;
+        }
+        if (depth == MAX_PROBE_DEPTH) {
+            return null;
+        }
+        for (int digits = 1; digits <= MAX_PROBE_DIGITS && offset + digits <= hash.length(); digits++) {
+            final File subdirectory = new File(dir, hash.substring(offset, offset + digits));
+            if (subdirectory.isDirectory()) {
+                final File found = probe(subdirectory, hash, offset + digits, name, depth + 1);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes a URI as a file name in the way Akubra's HashPathIdMapper does.
+     */
+    static String encode(final String uri) {
+        final StringBuilder out = new StringBuilder(uri.length() + 16);
+        for (int i = 0; i < uri.length(); i++) {
+            final char c = uri.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '=' || c == '(' || c == ')' || c == '[' || c == ']' || c == ';') {
+                out.append(c);
+            } else if (c == ':') {
+                out.append("%3A");
+            } else if (c == ' ') {
+                out.append("%20");
+            } else if (c == '+') {
+                out.append("%2B");
+            } else if (c == '_') {
+                out.append("%5F");
+            } else if (c == '*') {
+                out.append("%2A");
+            } else if (c == '.') {
+                out.append(i == uri.length() - 1 ? "%2E" : ".");
+            } else {
+                try {
+                    out.append(URLEncoder.encode(Character.toString(c), "UTF-8"));
+                } catch (final UnsupportedEncodingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+}
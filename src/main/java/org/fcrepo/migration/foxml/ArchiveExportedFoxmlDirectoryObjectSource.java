@@ -35,6 +35,10 @@ public class ArchiveExportedFoxmlDirectoryObjectSource implements ObjectSource {
      */
     private FileFilter fileFilter = new RegexFileFilter(Pattern.compile("^[^\\.].*$"));
 
+    private int binaryContentThreshold = FoxmlInputStreamFedoraObjectProcessor.DEFAULT_BINARY_CONTENT_THRESHOLD;
+
+    private int prefetch = FoxmlDirectoryIterator.DEFAULT_PREFETCH;
+
     /**
      * archive exported foxml directory object source.
      * @param exportDir the export directory
@@ -64,8 +68,28 @@ public class ArchiveExportedFoxmlDirectoryObjectSource implements ObjectSource {
         this.fileFilter = fileFilter;
     }
 
+    /**
+     * Sets the size up to which the decoded content of binaryContent elements is held in memory, rather than
+     * written to a temporary file.
+     * @param binaryContentThreshold the threshold in bytes
+     */
+    public void setBinaryContentThreshold(final int binaryContentThreshold) {
+        this.binaryContentThreshold = binaryContentThreshold;
+    }
+
+    /**
+     * Sets the number of objects opened ahead of the migration by a background thread.
+     * @param prefetch the number of objects, or 0 to open each object when it is requested
+     */
+    public void setPrefetch(final int prefetch) {
+        this.prefetch = prefetch;
+    }
+
     @Override
     public Iterator<FedoraObjectProcessor> iterator() {
-        return new FoxmlDirectoryDFSIterator(root, fetcher, localFedoraServer, fileFilter);
+        final var iterator = new FoxmlDirectoryIterator(root, null, fetcher, localFedoraServer, fileFilter);
+        iterator.setBinaryContentThreshold(binaryContentThreshold);
+        iterator.setPrefetch(prefetch);
+        return iterator;
     }
 }
@@ -0,0 +1,148 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A Reader that retains the characters it has passed to an XML parser, so that the raw source of an element can be
+ * copied out by character offset while the document is parsed in a single pass.
+ * <p>
+ * The parser reads ahead of the event it reports, so characters are retained from the last offset passed to
+ * {@link #release(long)}. Callers should release the offset of the current event as they go, which bounds the memory
+ * used to the parser's read-ahead plus the element being captured.
+ * </p>
+ */
+class CapturingReader extends FilterReader {
+
+    private char[] buffer = new char[8192];
+
+    // source offset of buffer[0]
+    private long bufferOffset;
+
+    // number of characters in the buffer
+    private int length;
+
+    // characters before this source offset may be discarded
+    private long releasedOffset;
+
+    /**
+     * capturing reader.
+     * @param in the reader to capture
+     */
+    CapturingReader(final Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int c = super.read();
+        if (c != -1) {
+            retain(new char[] {(char) c}, 0, 1);
+        }
+        return c;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        final int read = super.read(cbuf, off, len);
+        if (read > 0) {
+            retain(cbuf, off, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // skipped characters must still be counted, so read them instead
+        final char[] skipped = new char[(int) Math.min(n, 8192)];
+        final int read = read(skipped, 0, skipped.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Allows the characters before the offset to be discarded.
+     * @param offset the source offset of the earliest character that may still be captured
+     */
+    void release(final long offset) {
+        releasedOffset = Math.max(releasedOffset, offset);
+    }
+
+    /**
+     * Copies the raw content of an element, the characters between the end of its start tag and the start of its end
+     * tag.
+     * @param startTagOffset the source offset of the element's start tag
+     * @param endTagOffset the source offset of the element's end tag
+     * @return the element's content, as found in the source
+     */
+    String elementContent(final long startTagOffset, final long endTagOffset) {
+        if (startTagOffset < bufferOffset || endTagOffset > bufferOffset + length) {
+            throw new IllegalStateException("Element at offset " + startTagOffset + " is no longer retained");
+        }
+
+        final int start = (int) (startTagOffset - bufferOffset);
+        final int end = (int) (endTagOffset - bufferOffset);
+
+        // find the end of the start tag, skipping over any quoted attribute values
+        char quote = 0;
+        int i = start;
+        for (; i < end; i++) {
+            final char c = buffer[i];
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                break;
+            }
+        }
+
+        // an empty element has no end tag
+        if (i >= end || buffer[i - 1] == '/') {
+            return "";
+        }
+        return new String(buffer, i + 1, end - i - 1);
+    }
+
+    private void retain(final char[] cbuf, final int off, final int len) {
+        if (length + len > buffer.length) {
+            // discard released characters before growing the buffer
+            final int discard = (int) Math.min(Math.max(releasedOffset - bufferOffset, 0), length);
+            if (discard > 0) {
+                System.arraycopy(buffer, discard, buffer, 0, length - discard);
+                length -= discard;
+                bufferOffset += discard;
+            }
+            if (length + len > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + len));
+            }
+        }
+        System.arraycopy(cbuf, off, buffer, length, len);
+        length += len;
+    }
+
+}
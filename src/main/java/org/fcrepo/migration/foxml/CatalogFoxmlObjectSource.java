@@ -0,0 +1,207 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.fcrepo.migration.FedoraObjectProcessor;
+import org.fcrepo.migration.ObjectSource;
+import org.slf4j.Logger;
+
+/**
+ * An ObjectSource for the objects recorded in a {@link FoxmlCatalog}. The object store is not walked, and the FOXML
+ * file of an object is only opened when the object is requested, after the catalog entries have been filtered.
+ * <p>
+ * Objects added to the store after the catalog was built are not returned. A warning is logged when the store appears
+ * to have changed since, and for each object whose FOXML file changed after it was cataloged, whose estimated size
+ * may then be out of date.
+ * </p>
+ */
+public class CatalogFoxmlObjectSource implements ObjectSource {
+
+    private static final Logger LOGGER = getLogger(CatalogFoxmlObjectSource.class);
+
+    private final Path catalog;
+
+    private final InternalIDResolver resolver;
+
+    private URLFetcher fetcher;
+
+    private final String localFedoraServer;
+
+    private Predicate<FoxmlCatalog.Entry> filter = entry -> true;
+
+    private boolean largestFirst;
+
+    private int binaryContentThreshold = FoxmlInputStreamFedoraObjectProcessor.DEFAULT_BINARY_CONTENT_THRESHOLD;
+
+    /**
+     * Constructor.
+     * @param catalog the catalog file, written by {@link FoxmlCatalog#build}
+     * @param resolver an InternalIDResolver implementation that can resolve
+     *                 references to internally managed datastreams.
+     * @param localFedoraServer the domain and port for the server that hosted the fedora objects in the format
+     *                          "localhost:8080".
+     */
+    public CatalogFoxmlObjectSource(final Path catalog, final InternalIDResolver resolver,
+                                    final String localFedoraServer) {
+        this.catalog = catalog;
+        this.resolver = resolver;
+        this.fetcher = new HttpClientURLFetcher();
+        this.localFedoraServer = localFedoraServer;
+    }
+
+    /**
+     * set the fetcher.
+     * @param fetcher the fetcher
+     */
+    public void setFetcher(final URLFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Sets which catalog entries are included, e.g. those of one shard of the migration.
+     * @param filter a predicate accepting the entries to include
+     */
+    public void setFilter(final Predicate<FoxmlCatalog.Entry> filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Sets whether the objects are returned largest first, rather than in the order of the catalog. The entries
+     * included by the filter are then held in memory. Since workers take the next object as they become free, the
+     * largest objects are started first and the smaller ones fill in around them.
+     * @param largestFirst true to order the objects by decreasing estimated size
+     */
+    public void setLargestFirst(final boolean largestFirst) {
+        this.largestFirst = largestFirst;
+    }
+
+    /**
+     * Sets the size up to which the decoded content of binaryContent elements is held in memory, rather than
+     * written to a temporary file.
+     * @param binaryContentThreshold the threshold in bytes
+     */
+    public void setBinaryContentThreshold(final int binaryContentThreshold) {
+        this.binaryContentThreshold = binaryContentThreshold;
+    }
+
+    @Override
+    public Iterator<FedoraObjectProcessor> iterator() {
+        try {
+            final FoxmlCatalog.Reader reader = FoxmlCatalog.open(catalog);
+            warnIfChanged(reader);
+            if (!largestFirst) {
+                return new EntryIterator(reader, reader);
+            }
+            final List<FoxmlCatalog.Entry> entries = new ArrayList<>();
+            try (reader) {
+                reader.forEachRemaining(entry -> {
+                    if (filter.test(entry)) {
+                        entries.add(entry);
+                    }
+                });
+            }
+            entries.sort(Comparator.comparingLong(FoxmlCatalog.Entry::getEstimatedSize).reversed());
+            return new EntryIterator(entries.iterator(), null);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read the FOXML catalog " + catalog, e);
+        }
+    }
+
+    private void warnIfChanged(final FoxmlCatalog.Reader reader) {
+        try {
+            if (FoxmlCatalog.changedSince(reader.getRoot(), reader.getBuilt())) {
+                LOGGER.warn("{} has changed since the catalog {} was built. Objects added since then are not"
+                        + " migrated; run build-catalog again to include them.", reader.getRoot(), catalog);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to tell whether {} has changed since the catalog {} was built: {}",
+                    reader.getRoot(), catalog, e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the FOXML file of each included entry as it is requested.
+     */
+    private class EntryIterator implements Iterator<FedoraObjectProcessor>, AutoCloseable {
+
+        private final Iterator<FoxmlCatalog.Entry> entries;
+
+        private final FoxmlCatalog.Reader reader;
+
+        private FoxmlCatalog.Entry next;
+
+        EntryIterator(final Iterator<FoxmlCatalog.Entry> entries, final FoxmlCatalog.Reader reader) {
+            this.entries = entries;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && entries.hasNext()) {
+                final FoxmlCatalog.Entry entry = entries.next();
+                // the sorted entries have already been filtered
+                if (reader == null || filter.test(entry)) {
+                    next = entry;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public FedoraObjectProcessor next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final FoxmlCatalog.Entry entry = next;
+            next = null;
+            try {
+                if (!entry.isUnchanged(Files.readAttributes(entry.getPath(), BasicFileAttributes.class))) {
+                    LOGGER.warn("The FOXML file of {} has changed since it was cataloged", entry.getPid());
+                }
+            } catch (final IOException e) {
+                // a missing file is reported when it is opened
+            }
+            try {
+                final var processor = new FoxmlInputStreamFedoraObjectProcessor(
+                        entry.getPath().toFile(), fetcher, resolver, localFedoraServer);
+                processor.setBinaryContentThreshold(binaryContentThreshold);
+                return processor;
+            } catch (final XMLStreamException e) {
+                throw new RuntimeException(entry.getPath() + " doesn't appear to be an XML file."
+                        + (e.getMessage() != null ? "  (" + e.getMessage() + ")" : ""));
+            } catch (final FileNotFoundException e) {
+                throw new RuntimeException("The FOXML file of " + entry.getPid()
+                        + " is no longer where it was cataloged", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+}
@@ -13,10 +13,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.transform.stream.StreamSource;
 /**
@@ -127,10 +124,7 @@ public class DC {
      * @throws JAXBException JAXB exception
      */
     public static DC parseDC(final InputStream is) throws JAXBException {
-        final JAXBContext jc = JAXBContext.newInstance(DC.class);
-        final Unmarshaller unmarshaller = jc.createUnmarshaller();
-        final JAXBElement<DC> p = unmarshaller.unmarshal(new StreamSource(is), DC.class);
-        return p.getValue();
+        return JaxbUnmarshallers.unmarshal(new StreamSource(is), DC.class);
     }
 
 
@@ -0,0 +1,58 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An index from the internal ids of datastream files to their paths, used by a DirectoryScanningIDResolver.
+ */
+interface DatastreamIndex extends Closeable {
+
+    /**
+     * Looks up the files recorded for an internal id.
+     * @param id the internal id
+     * @return the paths of the files with the id; at most two are returned, as more than one is an error
+     * @throws IOException IO exception reading the index
+     */
+    List<String> lookup(String id) throws IOException;
+
+    /**
+     * @param path the path to a file in the index
+     * @return the path to the directory of the file
+     */
+    static String directoryOf(final String path) {
+        return path.substring(0, Math.max(0, path.lastIndexOf(File.separatorChar)));
+    }
+
+    /**
+     * Adds entries to a new index. Entries may be added concurrently, and the index is complete once the writer has
+     * been closed.
+     */
+    interface Writer extends Closeable {
+
+        /**
+         * Adds a datastream file to the index.
+         * @param id the internal id of the file
+         * @param path the path to the file
+         * @throws IOException IO exception writing the index
+         */
+        void add(String id, String path) throws IOException;
+
+        /**
+         * Removes the entries for the files directly within a directory that were in the index before this writer
+         * was opened. Entries added through this writer are kept.
+         * @param dir the path to the directory, as it appears in the paths of its files
+         * @throws IOException IO exception writing the index
+         */
+        void removeDirectory(String dir) throws IOException;
+    }
+
+}
@@ -6,27 +6,39 @@
  */
 package org.fcrepo.migration.foxml;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.commons.io.FileUtils;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.slf4j.Logger;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -42,16 +54,90 @@ public abstract class DirectoryScanningIDResolver implements InternalIDResolver
 
     private static final Logger LOGGER = getLogger(InternalIDResolver.class);
 
+    private static final String METRIC_NAME = "fcrepo.migration.index";
+    private static final String OPERATION = "operation";
+    private static final Counter indexedFilesCounter = Metrics.counter(METRIC_NAME, OPERATION, "indexFile");
+
     /**
-     * A lucene IndexSearcher over an index maintained by this class.
-     * For every file found in the datastream directory a document exists
-     * in this index that contains an "id" field and a "path" field.  The
-     * id field is the internal id, the path field is the full path to the
-     * file containing that datastream content.
+     * The directory walk is bound by file system latency rather than cpu, so it uses more threads than cores.
      */
-    private final IndexSearcher searcher;
-    private final IndexReader reader;
-    private final FSDirectory fsDirectory;
+    private static final int INDEX_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final long PROGRESS_INTERVAL_SECONDS = 30;
+
+    private static final String LOCK_FILE = "index.lock";
+
+    private static final long UNKNOWN_MODIFIED = -1;
+    private static final long RACY_MODIFIED_MILLIS = 2000;
+
+    /**
+     * The kinds of index that may be used to resolve internal ids.
+     */
+    public enum IndexType {
+        /**
+         * A lucene index (the original index format).
+         */
+        LUCENE {
+            @Override
+            boolean exists(final File indexDir) throws IOException {
+                return LuceneDatastreamIndex.exists(indexDir);
+            }
+
+            @Override
+            DatastreamIndex.Writer create(final File indexDir) throws IOException {
+                return LuceneDatastreamIndex.create(indexDir);
+            }
+
+            @Override
+            DatastreamIndex.Writer update(final File indexDir) throws IOException {
+                return LuceneDatastreamIndex.update(indexDir);
+            }
+
+            @Override
+            DatastreamIndex open(final File indexDir) throws IOException {
+                return LuceneDatastreamIndex.open(indexDir);
+            }
+        },
+        /**
+         * A compact, memory-mapped hash index, which opens quickly and answers each lookup with one or two reads.
+         */
+        HASH {
+            @Override
+            boolean exists(final File indexDir) throws IOException {
+                return MappedHashDatastreamIndex.exists(indexDir);
+            }
+
+            @Override
+            DatastreamIndex.Writer create(final File indexDir) throws IOException {
+                return MappedHashDatastreamIndex.create(indexDir);
+            }
+
+            @Override
+            DatastreamIndex.Writer update(final File indexDir) throws IOException {
+                return MappedHashDatastreamIndex.update(indexDir);
+            }
+
+            @Override
+            DatastreamIndex open(final File indexDir) throws IOException {
+                return MappedHashDatastreamIndex.open(indexDir);
+            }
+        };
+
+        abstract boolean exists(File indexDir) throws IOException;
+
+        abstract DatastreamIndex.Writer create(File indexDir) throws IOException;
+
+        abstract DatastreamIndex.Writer update(File indexDir) throws IOException;
+
+        abstract DatastreamIndex open(File indexDir) throws IOException;
+    }
+
+    /**
+     * An index maintained by this class. For every file found in the
+     * datastream directory the index maps the file's internal id to the
+     * full path to the file containing that datastream content.
+     */
+    private final DatastreamIndex index;
 
     /**
      * directory scanning ID resolver
@@ -62,6 +148,36 @@ public abstract class DirectoryScanningIDResolver implements InternalIDResolver
      * @throws IOException IO exception creating temp and index files/directories
      */
     public DirectoryScanningIDResolver(final File cachedIndexDir, final File dsRoot) throws IOException {
+        this(cachedIndexDir, dsRoot, IndexType.LUCENE);
+    }
+
+    /**
+     * directory scanning ID resolver
+     * @param cachedIndexDir the index directory.  If it contains an index of the given type, the old cache will be
+     *                 used, if it doesn't a new cache will be built at that location.  If it is null, a new cache
+     *                 will be built in the temp file space that will be deleted upon application shutdown.
+     * @param dsRoot the datastream root
+     * @param indexType the kind of index to use
+     * @throws IOException IO exception creating temp and index files/directories
+     */
+    public DirectoryScanningIDResolver(final File cachedIndexDir, final File dsRoot, final IndexType indexType)
+            throws IOException {
+        this(cachedIndexDir, dsRoot, indexType, false);
+    }
+
+    /**
+     * directory scanning ID resolver
+     * @param cachedIndexDir the index directory.  If it contains an index of the given type, the old cache will be
+     *                 used, if it doesn't a new cache will be built at that location.  If it is null, a new cache
+     *                 will be built in the temp file space that will be deleted upon application shutdown.
+     * @param dsRoot the datastream root
+     * @param indexType the kind of index to use
+     * @param refresh if true, an existing index is brought up to date by rescanning only the directories that have
+     *                been modified since it was built or last refreshed
+     * @throws IOException IO exception creating temp and index files/directories
+     */
+    public DirectoryScanningIDResolver(final File cachedIndexDir, final File dsRoot, final IndexType indexType,
+                                       final boolean refresh) throws IOException {
         final File indexDir;
         if (cachedIndexDir == null) {
             final File temp = File.createTempFile("tempfile", "basedir");
@@ -74,8 +190,8 @@ public abstract class DirectoryScanningIDResolver implements InternalIDResolver
                 @Override
                 public void run() {
                     try {
-                        if (searcher != null) {
-                            searcher.getIndexReader().close();
+                        if (index != null) {
+                            index.close();
                         }
                         LOGGER.info("Deleting index directory at \"" + indexDir.getAbsolutePath() + "\"...");
                         FileUtils.deleteDirectory(indexDir);
@@ -89,66 +205,232 @@ public abstract class DirectoryScanningIDResolver implements InternalIDResolver
             indexDir = cachedIndexDir;
         }
 
-        // Index dir exists and is non-empty
-        if (indexDir.exists() && indexDir.list().length > 0) {
-            LOGGER.warn("Index exists at \"" + indexDir.getPath() + "\" and will be used.  "
-                    + "To clear index, simply delete this directory and re-run the application.");
-        } else {
-            final Analyzer analyzer = new StandardAnalyzer();
-            final IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
-            iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-
-            try (final Directory dir = FSDirectory.open(indexDir.toPath());
-                 final IndexWriter writer = new IndexWriter(dir, iwc)) {
-
-                LOGGER.info("Building an index of all the datastreams in \"" + dsRoot.getPath() + "\"...");
-                indexDatastreams(writer, dsRoot);
-
-                writer.commit();
-
+        // several processes, such as the shards of a migration, may share the index, and only one builds it
+        Files.createDirectories(indexDir.toPath());
+        try (final FileChannel lockChannel = FileChannel.open(indexDir.toPath().resolve(LOCK_FILE), CREATE, WRITE);
+             final FileLock lock = lockChannel.lock()) {
+            final Path manifest = manifestPath(indexDir, indexType);
+            final boolean exists = indexType.exists(indexDir);
+            final Map<String, Long> previous = exists && refresh ? readManifest(manifest) : null;
+            if (previous != null) {
+                LOGGER.info("Refreshing the index at \"" + indexDir.getPath() + "\" with the changes in \""
+                        + dsRoot.getPath() + "\"...");
+                // without a manifest, an interrupted refresh is followed by a full rebuild
+                Files.delete(manifest);
+                final Map<String, Long> directories;
+                try (final DatastreamIndex.Writer writer = indexType.update(indexDir)) {
+                    directories = indexDatastreams(writer, dsRoot, previous);
+                }
+                writeManifest(manifest, directories);
+            } else if (exists && !refresh) {
+                LOGGER.warn("Index exists at \"" + indexDir.getPath() + "\" and will be used.  "
+                        + "To clear index, simply delete this directory and re-run the application.");
+            } else {
+                if (exists) {
+                    LOGGER.warn("Index at \"" + indexDir.getPath() + "\" has no record of the directories it was built "
+                            + "from, and will be rebuilt.");
+                }
+                Files.deleteIfExists(manifest);
+                final Map<String, Long> directories;
+                try (final DatastreamIndex.Writer writer = indexType.create(indexDir)) {
+                    LOGGER.info("Building an index of all the datastreams in \"" + dsRoot.getPath() + "\"...");
+                    directories = indexDatastreams(writer, dsRoot, Map.of());
+                }
+                writeManifest(manifest, directories);
             }
         }
 
-        fsDirectory = FSDirectory.open(indexDir.toPath());
-        reader = DirectoryReader.open(fsDirectory);
-        searcher = new IndexSearcher(reader);
+        index = indexType.open(indexDir);
     }
 
+    @Override
     public void close() throws IOException {
-        reader.close();
-        fsDirectory.close();
+        index.close();
     }
 
     @Override
     public CachedContent resolveInternalID(final String id) {
         try {
-            final TopDocs result = searcher.search(new TermQuery(new Term("id", id)), 2);
-            if (result.totalHits == 1) {
-                return new FileCachedContent(new File(searcher.doc(result.scoreDocs[0].doc).get("path")));
-            } else if (result.totalHits < 1) {
+            final List<String> paths = index.lookup(id);
+            if (paths.size() == 1) {
+                return new FileCachedContent(new File(paths.get(0)));
+            } else if (paths.isEmpty()) {
                 throw new RuntimeException("Unable to resolve internal ID \"" + id + "\"!");
             } else {
-                throw new IllegalStateException(result.totalHits + " files matched the internal id \"" + id + "\".  ("
-                        + searcher.doc(result.scoreDocs[0].doc).get("path") + ", "
-                        + searcher.doc(result.scoreDocs[1].doc).get("path") + "...)");
+                throw new IllegalStateException("Multiple files matched the internal id \"" + id + "\".  ("
+                        + paths.get(0) + ", " + paths.get(1) + "...)");
             }
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void indexDatastreams(final IndexWriter writer, final File f) throws IOException {
-        if (f.isDirectory()) {
-            for (final File child : f.listFiles()) {
-                indexDatastreams(writer, child);
+    /**
+     * Walks the datastream directory in parallel, one fork/join task per directory, adding every file to the index.
+     * Directories that are recorded in the previous manifest with their current modification time are not listed
+     * again, as their files are already in the index.
+     *
+     * @return the manifest of the directories that were walked
+     */
+    private Map<String, Long> indexDatastreams(final DatastreamIndex.Writer writer, final File dsRoot,
+                                               final Map<String, Long> previous) throws IOException {
+        final IndexWalk walk = new IndexWalk(writer, previous);
+        Metrics.gauge(METRIC_NAME + ".rate", walk, IndexWalk::filesPerSecond);
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "index-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(walk::log, PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+        final ForkJoinPool pool = new ForkJoinPool(INDEX_THREADS);
+        try {
+            if (dsRoot.isDirectory()) {
+                pool.invoke(walk.new IndexDirectoryTask(dsRoot.toPath()));
+            } else {
+                walk.indexFile(dsRoot);
+            }
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdownNow();
+            reporter.shutdownNow();
+        }
+
+        for (final String dir : previous.keySet()) {
+            if (!walk.directories.containsKey(dir)) {
+                writer.removeDirectory(dir);
+            }
+        }
+        walk.log();
+        return walk.directories;
+    }
+
+    /**
+     * The state shared by the tasks of one walk over the datastream directory.
+     */
+    private class IndexWalk {
+
+        private final long start = System.nanoTime();
+        private final LongAdder files = new LongAdder();
+        private final DatastreamIndex.Writer writer;
+        private final Map<String, Long> previous;
+        private final Map<String, List<String>> previousSubdirectories = new HashMap<>();
+        private final Map<String, Long> directories = new ConcurrentHashMap<>();
+
+        IndexWalk(final DatastreamIndex.Writer writer, final Map<String, Long> previous) {
+            this.writer = writer;
+            this.previous = previous;
+            for (final String dir : previous.keySet()) {
+                previousSubdirectories.computeIfAbsent(DatastreamIndex.directoryOf(dir), k -> new ArrayList<>())
+                        .add(dir);
+            }
+        }
+
+        void indexFile(final File f) throws IOException {
+            final String id = getInternalIdForFile(f);
+            writer.add(id, f.getPath());
+            files.increment();
+            indexedFilesCounter.increment();
+            LOGGER.trace("Added \"{}\" for: {}", id, f.getPath());
+        }
+
+        double filesPerSecond() {
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            return seconds > 0 ? files.sum() / seconds : 0;
+        }
+
+        void log() {
+            LOGGER.info("Indexed {} datastream files in {} directories ({} files/sec)", files.sum(),
+                    directories.size(), String.format("%.1f", filesPerSecond()));
+        }
+
+        /**
+         * Indexes the files in one directory and forks a task for each of its subdirectories.
+         */
+        private class IndexDirectoryTask extends RecursiveAction {
+
+            private final Path dir;
+
+            IndexDirectoryTask(final Path dir) {
+                this.dir = dir;
+            }
+
+            @Override
+            protected void compute() {
+                final String path = dir.toString();
+                final List<IndexDirectoryTask> subdirectories = new ArrayList<>();
+                try {
+                    // read before listing, so that a change made while listing is found by the next refresh
+                    final long modified = Files.getLastModifiedTime(dir).toMillis();
+                    directories.put(path, isRacy(modified) ? UNKNOWN_MODIFIED : modified);
+
+                    final Long previousModified = previous.get(path);
+                    if (previousModified != null && previousModified == modified) {
+                        for (final String subdirectory : previousSubdirectories.getOrDefault(path, List.of())) {
+                            subdirectories.add(new IndexDirectoryTask(Path.of(subdirectory)));
+                        }
+                    } else {
+                        if (previousModified != null) {
+                            writer.removeDirectory(path);
+                        }
+                        try (final DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                            for (final Path child : children) {
+                                if (Files.isDirectory(child)) {
+                                    subdirectories.add(new IndexDirectoryTask(child));
+                                } else {
+                                    indexFile(child.toFile());
+                                }
+                            }
+                        }
+                    }
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                invokeAll(subdirectories);
+            }
+        }
+    }
+
+    /**
+     * A directory modified within the timestamp resolution of some file systems may be modified again without its
+     * modification time changing, so it is rescanned by the next refresh.
+     */
+    private static boolean isRacy(final long modified) {
+        return System.currentTimeMillis() - modified < RACY_MODIFIED_MILLIS;
+    }
+
+    private static Path manifestPath(final File indexDir, final IndexType indexType) {
+        return indexDir.toPath().resolve("directories-" + indexType.name().toLowerCase() + ".manifest");
+    }
+
+    /**
+     * @return the directories recorded in the manifest, or null if there is no manifest
+     */
+    private static Map<String, Long> readManifest(final Path manifest) throws IOException {
+        if (!Files.exists(manifest)) {
+            return null;
+        }
+        final Map<String, Long> directories = new HashMap<>();
+        try (final BufferedReader reader = Files.newBufferedReader(manifest, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int space = line.indexOf(' ');
+                directories.put(line.substring(space + 1), Long.parseLong(line.substring(0, space)));
+            }
+        }
+        return directories;
+    }
+
+    private static void writeManifest(final Path manifest, final Map<String, Long> directories) throws IOException {
+        final Path tmp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try (final BufferedWriter writer = Files.newBufferedWriter(tmp, UTF_8)) {
+            for (final Map.Entry<String, Long> entry : new TreeMap<>(directories).entrySet()) {
+                writer.write(entry.getValue() + " " + entry.getKey());
+                writer.newLine();
             }
-        } else {
-            final Document doc = new Document();
-            doc.add(new StringField("path", f.getPath(), Field.Store.YES));
-            doc.add(new StringField("id", getInternalIdForFile(f), Field.Store.YES));
-            LOGGER.trace("Added \"{}\" for: {}", getInternalIdForFile(f), f.getPath());
-            writer.addDocument(doc);
         }
+        Files.move(tmp, manifest, REPLACE_EXISTING, ATOMIC_MOVE);
     }
 
     /**
@@ -0,0 +1,303 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import org.fcrepo.migration.FedoraObjectProcessor;
+import org.slf4j.Logger;
+
+/**
+ * A catalog of the objects in a directory of FOXML files, recording the PID, path, size and modification time of
+ * each object, and its size estimated by {@link FoxmlSizeEstimator}, so that later runs can select and order the
+ * objects without walking the directory or reading the FOXML files that are not migrated.
+ * <p>
+ * The catalog is a binary file: a header naming the root directory and the time the catalog was started, then a
+ * record for each object, with its path relative to the root, in the sorted order of {@link FoxmlDirectoryIterator},
+ * then an end marker, which tells a complete catalog from a truncated one. An object that cannot be read is left out,
+ * but a failure to walk the directory fails the catalog.
+ * </p>
+ * <p>
+ * The catalog is not updated as the store changes, and objects added after it was built are not migrated from it.
+ * The recorded size and modification time, and the build time, let a reader notice that the store has changed since,
+ * see {@link Entry#isUnchanged} and {@link #changedSince}, so that it can warn that the catalog should be rebuilt.
+ * </p>
+ */
+public class FoxmlCatalog {
+
+    private static final Logger LOGGER = getLogger(FoxmlCatalog.class);
+
+    private static final int MAGIC = 0x46434154;
+    private static final int VERSION = 2;
+
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    private FoxmlCatalog() {
+    }
+
+    /**
+     * Catalogs the FOXML files in a directory, replacing the catalog file atomically.
+     * @param root the directory of FOXML files
+     * @param fileFilter a FileFilter that defines which files are objects
+     * @param catalog the catalog file
+     * @return the number of objects cataloged
+     * @throws IOException IO exception
+     */
+    public static long build(final File root, final FileFilter fileFilter, final Path catalog) throws IOException {
+        final Path tmp = catalog.resolveSibling(catalog.getFileName() + ".tmp");
+        final Path rootPath = root.toPath().toAbsolutePath().normalize();
+        final long started = System.currentTimeMillis();
+        long objects = 0;
+        long unreadable = 0;
+        try (final FoxmlDirectoryIterator iterator = new FoxmlDirectoryIterator(rootPath.toFile(), null, null, null,
+                fileFilter);
+             final DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(rootPath.toString());
+            out.writeLong(started);
+            while (iterator.hasNext()) {
+                final Entry entry;
+                try (final FedoraObjectProcessor processor = iterator.next()) {
+                    final Path path = processor.getObjectInfo().getFoxmlPath();
+                    final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    entry = new Entry(processor.getObjectInfo().getPid(), path, attributes.size(),
+                            attributes.lastModifiedTime().toMillis(), FoxmlSizeEstimator.estimate(path));
+                } catch (final IllegalStateException e) {
+                    // the rest of the objects cannot be enumerated, so the catalog would be incomplete
+                    throw new IOException("Unable to catalog " + rootPath, e);
+                } catch (final IOException | RuntimeException e) {
+                    unreadable++;
+                    LOGGER.warn("Unable to catalog an object: {}", e.getMessage());
+                    continue;
+                }
+                out.writeByte(RECORD);
+                out.writeUTF(entry.pid);
+                out.writeUTF(rootPath.relativize(entry.path).toString());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.estimatedSize);
+                if (++objects % PROGRESS_INTERVAL == 0) {
+                    LOGGER.info("Cataloged {} objects", objects);
+                }
+            }
+            out.writeByte(END);
+        } catch (final IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, catalog, REPLACE_EXISTING, ATOMIC_MOVE);
+        LOGGER.info("Cataloged {} objects in {} ({} unreadable)", objects, catalog, unreadable);
+        return objects;
+    }
+
+    /**
+     * Opens a catalog for reading.
+     * @param catalog the catalog file
+     * @return a reader of the entries of the catalog, in the order they were cataloged
+     * @throws IOException IO exception
+     */
+    public static Reader open(final Path catalog) throws IOException {
+        return new Reader(catalog);
+    }
+
+    /**
+     * Tells whether a directory of FOXML files has changed since a time, by the modification time of the directory
+     * and of the directories it contains. This notices objects added or removed in the directories that hold the
+     * FOXML files of an Akubra store with a single level pattern, such as the default "##", or in a new directory of
+     * a legacy store, but deeper changes are not seen.
+     * @param root the directory of FOXML files
+     * @param time the time, in milliseconds since the epoch
+     * @return true if the directory, or one of the directories it contains, was modified after the time
+     * @throws IOException IO exception
+     */
+    public static boolean changedSince(final Path root, final long time) throws IOException {
+        if (Files.getLastModifiedTime(root).toMillis() > time) {
+            return true;
+        }
+        try (final Stream<Path> children = Files.list(root)) {
+            final Iterator<Path> directories = children.filter(Files::isDirectory).iterator();
+            while (directories.hasNext()) {
+                if (Files.getLastModifiedTime(directories.next()).toMillis() > time) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An object in the catalog.
+     */
+    public static class Entry {
+
+        private final String pid;
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+        private final long estimatedSize;
+
+        Entry(final String pid, final Path path, final long size, final long lastModified,
+              final long estimatedSize) {
+            this.pid = pid;
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.estimatedSize = estimatedSize;
+        }
+
+        /**
+         * @return the PID of the object
+         */
+        public String getPid() {
+            return pid;
+        }
+
+        /**
+         * @return the path of the FOXML file
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return the size of the FOXML file in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the modification time of the FOXML file, in milliseconds since the epoch
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return the size of the FOXML file plus the declared sizes of its managed datastreams, in bytes
+         */
+        public long getEstimatedSize() {
+            return estimatedSize;
+        }
+
+        /**
+         * @param attributes the current attributes of the FOXML file
+         * @return true if the FOXML file has the size and modification time it was cataloged with
+         */
+        public boolean isUnchanged(final BasicFileAttributes attributes) {
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+        }
+    }
+
+    /**
+     * Reads the entries of a catalog, one at a time.
+     */
+    public static class Reader implements Iterator<Entry>, Closeable {
+
+        private final Path catalog;
+        private final DataInputStream in;
+        private final Path root;
+        private final long built;
+
+        private Entry next;
+        private boolean ended;
+
+        private Reader(final Path catalog) throws IOException {
+            this.catalog = catalog;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(catalog), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(catalog + " is not a FOXML catalog");
+                }
+                final int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException(catalog + " is a FOXML catalog of unknown version " + version);
+                }
+                root = Path.of(in.readUTF());
+                built = in.readLong();
+            } catch (final IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the directory of FOXML files that was cataloged
+         */
+        public Path getRoot() {
+            return root;
+        }
+
+        /**
+         * @return the time the catalog was started, in milliseconds since the epoch
+         */
+        public long getBuilt() {
+            return built;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !ended) {
+                try {
+                    if (in.readByte() == RECORD) {
+                        final String pid = in.readUTF();
+                        final Path path = root.resolve(in.readUTF());
+                        final long size = in.readLong();
+                        final long lastModified = in.readLong();
+                        final long estimatedSize = in.readLong();
+                        next = new Entry(pid, path, size, lastModified, estimatedSize);
+                    } else {
+                        ended = true;
+                    }
+                } catch (final IOException e) {
+                    throw new UncheckedIOException("Unable to read the FOXML catalog " + catalog
+                            + ", which may be incomplete", e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry entry = next;
+            next = null;
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+}
@@ -24,7 +24,10 @@ import org.fcrepo.migration.FedoraObjectProcessor;
  * Each file in the tree is expected to be a FOXML file.   This implementation likely minimizes
  * memory usage for the expected organization of FOXML files on disk.
  * @author mdurbin
+ * @deprecated use {@link FoxmlDirectoryIterator}, which visits files in a stable order and can open them ahead of
+ *             the consumer
  */
+@Deprecated
 public class FoxmlDirectoryDFSIterator implements Iterator<FedoraObjectProcessor> {
 
     private List<File> current;
@@ -37,6 +40,8 @@ public class FoxmlDirectoryDFSIterator implements Iterator<FedoraObjectProcessor
 
     private FileFilter fileFilter;
 
+    private int binaryContentThreshold = FoxmlInputStreamFedoraObjectProcessor.DEFAULT_BINARY_CONTENT_THRESHOLD;
+
     /**
      * foxml directory DFS iterator.
      * @param root the root file
@@ -70,6 +75,14 @@ public class FoxmlDirectoryDFSIterator implements Iterator<FedoraObjectProcessor
         this.resolver = resolver;
     }
 
+    /**
+     * Sets the size up to which decoded binaryContent is held in memory by the returned processors.
+     * @param binaryContentThreshold the threshold in bytes
+     */
+    public void setBinaryContentThreshold(final int binaryContentThreshold) {
+        this.binaryContentThreshold = binaryContentThreshold;
+    }
+
     private boolean advanceToNext() {
         while (current.size() > 0 || stack.size() > 0) {
             if (current.isEmpty()) {
@@ -106,8 +119,10 @@ public class FoxmlDirectoryDFSIterator implements Iterator<FedoraObjectProcessor
         } else {
             final File currentFile = current.remove(0);
             try {
-                return new FoxmlInputStreamFedoraObjectProcessor(
+                final var processor = new FoxmlInputStreamFedoraObjectProcessor(
                         currentFile, fetcher, resolver, localFedoraServer);
+                processor.setBinaryContentThreshold(binaryContentThreshold);
+                return processor;
             } catch (final XMLStreamException e) {
                 throw new RuntimeException(currentFile.getPath() + " doesn't appear to be an XML file."
                         + (e.getMessage() != null ? "  (" + e.getMessage() + ")" : ""));
@@ -0,0 +1,259 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.fcrepo.migration.FedoraObjectProcessor;
+import org.slf4j.Logger;
+
+/**
+ * A depth-first iteration over a tree of FOXML files that exposes them as FedoraObjectProcessors.
+ * <p>
+ * The entries of each directory are visited in sorted order, so the order of the objects is the same from one run to
+ * the next. Pending entries are kept on a deque, so neither wide nor deep trees, nor long runs of files that are
+ * filtered out, are costly. Unless prefetching is disabled, a background thread walks ahead of the consumer, opening
+ * the next FOXML files and reading their headers while the current object is being migrated. The iterator should be
+ * closed if it is abandoned before the end, to release the prefetched files.
+ * </p>
+ */
+public class FoxmlDirectoryIterator implements Iterator<FedoraObjectProcessor>, AutoCloseable {
+
+    private static final Logger LOGGER = getLogger(FoxmlDirectoryIterator.class);
+
+    /**
+     * The number of objects opened ahead of the consumer by default.
+     */
+    public static final int DEFAULT_PREFETCH = 8;
+
+    private static final Entry END = new Entry(null, null);
+
+    private final Deque<Path> pending = new ArrayDeque<>();
+
+    private final InternalIDResolver resolver;
+    private final URLFetcher fetcher;
+    private final String localFedoraServer;
+    private final FileFilter fileFilter;
+
+    private int binaryContentThreshold = FoxmlInputStreamFedoraObjectProcessor.DEFAULT_BINARY_CONTENT_THRESHOLD;
+    private int prefetch = DEFAULT_PREFETCH;
+
+    private BlockingQueue<Entry> queue;
+    private Thread prefetcher;
+    private Entry next;
+    private volatile boolean closed;
+
+    /**
+     * foxml directory iterator.
+     * @param root the root directory
+     * @param resolver the resolver, or null if the FOXML does not reference internally managed datastreams
+     * @param fetcher the fetcher
+     * @param localFedoraServer the domain and port for the server that hosted the fedora objects in the format
+     *                          "localhost:8080".
+     * @param fileFilter a FileFilter that defines which files should be included in this Iterator.
+     */
+    public FoxmlDirectoryIterator(final File root, final InternalIDResolver resolver, final URLFetcher fetcher,
+                                  final String localFedoraServer, final FileFilter fileFilter) {
+        this.resolver = resolver;
+        this.fetcher = fetcher;
+        this.localFedoraServer = localFedoraServer;
+        this.fileFilter = fileFilter;
+        pending.push(root.toPath());
+    }
+
+    /**
+     * Sets the size up to which decoded binaryContent is held in memory by the returned processors.
+     * @param binaryContentThreshold the threshold in bytes
+     */
+    public void setBinaryContentThreshold(final int binaryContentThreshold) {
+        this.binaryContentThreshold = binaryContentThreshold;
+    }
+
+    /**
+     * Sets the number of objects opened ahead of the consumer by a background thread. Must be set before the
+     * iteration starts.
+     * @param prefetch the number of objects, or 0 to open each object when it is requested
+     */
+    public void setPrefetch(final int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = take();
+        }
+        return next != END;
+    }
+
+    @Override
+    public FedoraObjectProcessor next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final Entry entry = next;
+        next = null;
+        if (entry.failure != null) {
+            throw entry.failure;
+        }
+        return entry.processor;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (prefetcher != null) {
+            prefetcher.interrupt();
+            try {
+                prefetcher.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            queue.forEach(Entry::close);
+            queue.clear();
+        }
+        if (next != null) {
+            next.close();
+            next = END;
+        }
+    }
+
+    private Entry take() {
+        if (closed) {
+            return END;
+        }
+        if (prefetch <= 0) {
+            return advance();
+        }
+        if (prefetcher == null) {
+            queue = new ArrayBlockingQueue<>(prefetch);
+            prefetcher = new Thread(this::prefetch, "foxml-prefetch");
+            prefetcher.setDaemon(true);
+            prefetcher.start();
+        }
+        try {
+            return queue.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the next object", e);
+        }
+    }
+
+    private void prefetch() {
+        Entry entry = null;
+        try {
+            do {
+                entry = advance();
+                queue.put(entry);
+            } while (entry != END);
+        } catch (final InterruptedException e) {
+            // closed before the entry could be handed over
+            entry.close();
+        }
+    }
+
+    /**
+     * Walks to the next file accepted by the filter and opens it. A failure to open a file is returned as its entry,
+     * while a failure of the walk itself is returned as an IllegalStateException that ends the iteration.
+     */
+    private Entry advance() {
+        try {
+            while (!pending.isEmpty() && !closed) {
+                final Path path = pending.pop();
+                if (Files.isDirectory(path)) {
+                    try {
+                        pushChildren(path);
+                    } catch (final IOException e) {
+                        return new Entry(null, new UncheckedIOException("Unable to list " + path, e));
+                    }
+                } else {
+                    final File file = path.toFile();
+                    if (fileFilter.accept(file)) {
+                        return open(file);
+                    }
+                }
+            }
+        } catch (final RuntimeException e) {
+            // the walk cannot continue, so the failure is the last entry
+            LOGGER.error("Failed to enumerate FOXML files", e);
+            pending.clear();
+            return new Entry(null, new IllegalStateException("Unable to enumerate the rest of the FOXML files", e));
+        }
+        return END;
+    }
+
+    private void pushChildren(final Path directory) throws IOException {
+        final List<Path> children = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(children::add);
+        }
+        Collections.sort(children);
+        // pushed in reverse, so that the first child in sorted order is visited first
+        for (int i = children.size() - 1; i >= 0; i--) {
+            pending.push(children.get(i));
+        }
+    }
+
+    private Entry open(final File file) {
+        try {
+            final var processor = new FoxmlInputStreamFedoraObjectProcessor(
+                    file, fetcher, resolver, localFedoraServer);
+            processor.setBinaryContentThreshold(binaryContentThreshold);
+            return new Entry(processor, null);
+        } catch (final XMLStreamException e) {
+            return new Entry(null, new RuntimeException(file.getPath() + " doesn't appear to be an XML file."
+                    + (e.getMessage() != null ? "  (" + e.getMessage() + ")" : "")));
+        } catch (final FileNotFoundException e) {
+            return new Entry(null, new RuntimeException(e));
+        } catch (final RuntimeException e) {
+            // a malformed object fails on its own, and the walk goes on to the next
+            return new Entry(null, new RuntimeException("Unable to read " + file.getPath()
+                    + (e.getMessage() != null ? ": " + e.getMessage() : ""), e));
+        }
+    }
+
+    /**
+     * An opened object, or the failure to open or find it.
+     */
+    private static class Entry {
+
+        private final FedoraObjectProcessor processor;
+        private final RuntimeException failure;
+
+        Entry(final FedoraObjectProcessor processor, final RuntimeException failure) {
+            this.processor = processor;
+            this.failure = failure;
+        }
+
+        void close() {
+            if (processor != null) {
+                processor.close();
+            }
+        }
+    }
+
+}
@@ -11,12 +11,12 @@ import io.micrometer.core.instrument.Timer;
 import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.xml.serialize.OutputFormat;
 import org.apache.xml.serialize.XMLSerializer;
-import org.codehaus.stax2.XMLInputFactory2;
+import org.codehaus.stax2.XMLStreamReader2;
 import org.fcrepo.migration.ContentDigest;
 import org.fcrepo.migration.DatastreamInfo;
 import org.fcrepo.migration.DatastreamVersion;
@@ -33,48 +33,43 @@ import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import javax.xml.stream.events.XMLEvent;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -86,11 +81,19 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
 
     private static final Logger LOG = LoggerFactory.getLogger(FoxmlInputStreamFedoraObjectProcessor.class);
 
-    private static final Pattern INLINE_PATTERN = Pattern.compile("<foxml:xmlContent>(.*?)</foxml:xmlContent>",
-            Pattern.DOTALL);
-
     private static final String FOXML_NS = "info:fedora/fedora-system:def/foxml#";
 
+    /**
+     * By default, decoded binaryContent is always written to a temporary file.
+     */
+    public static final int DEFAULT_BINARY_CONTENT_THRESHOLD = 0;
+
+    // the bytes that hold the byte order mark and XML declaration
+    private static final int PROLOG_LENGTH = 1024;
+
+    private static final Pattern ENCODING_DECLARATION =
+            Pattern.compile("^<\\?xml\\s[^>]*?encoding\\s*=\\s*[\"']([A-Za-z][A-Za-z0-9._-]*)[\"']");
+
     private static final String METRIC_NAME = "fcrepo.storage.foxml.object";
     private static final String OPERATION = "operation";
     private static final Timer processObjectTimer = Metrics.timer(METRIC_NAME, OPERATION, "processObject");
@@ -104,7 +107,10 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
 
     private File file;
 
-    private InputStream stream;
+    /**
+     * Retains the source read by the XML reader, so inline XML can be copied out verbatim
+     */
+    private CapturingReader source;
 
     private XMLStreamReader reader;
 
@@ -112,7 +118,10 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
 
     private List<File> tempFiles;
 
-    private LinkedList<String> inlineXml;
+    /**
+     * The size up to which decoded binaryContent is kept in memory instead of in a temporary file.
+     */
+    private int binaryContentThreshold = DEFAULT_BINARY_CONTENT_THRESHOLD;
 
     /**
      * The basic object information read from the XML stream at construction
@@ -137,8 +146,9 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
         this.idResolver = resolver;
         this.localFedoraServer = localFedoraServer;
         final XMLInputFactory factory = XMLInputFactory.newFactory();
-        stream = new BufferedInputStream(new FileInputStream(file));
-        reader = factory.createXMLStreamReader(stream);
+        // FOXML is read as characters, so that source offsets match the retained characters
+        source = new CapturingReader(openReader(file));
+        reader = factory.createXMLStreamReader(source);
         reader.nextTag();
         final Map<String, String> attributes = getAttributes(reader, "PID", "VERSION", "FEDORA_URI", "schemaLocation");
         objectInfo = new DefaultObjectInfo(attributes.get("PID"), attributes.get("FEDORA_URI"), this.file.toPath());
@@ -155,17 +165,67 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
         } catch (ParserConfigurationException e) {
             throw new RuntimeException(e);
         }
+    }
 
+    /**
+     * Opens the file as characters, in the encoding given by its byte order mark or XML declaration, as an XML parser
+     * would, or UTF-8 if it has neither. A byte order mark is skipped.
+     */
+    private static Reader openReader(final File file) throws XMLStreamException, FileNotFoundException {
+        final var in = new BufferedInputStream(new FileInputStream(file));
         try {
-            inlineXml = new LinkedList<>();
-            final var content = FileUtils.readFileToString(file);
-            final var matcher = INLINE_PATTERN.matcher(content);
-            while (matcher.find()) {
-                inlineXml.add(matcher.group(1));
+            return new InputStreamReader(in, detectEncoding(in));
+        } catch (final IOException | RuntimeException e) {
+            IOUtils.closeQuietly(in, suppressed -> e.addSuppressed(suppressed));
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new XMLStreamException("Unable to read " + file, e);
+        }
+    }
+
+    private static Charset detectEncoding(final BufferedInputStream in) throws IOException {
+        in.mark(PROLOG_LENGTH);
+        final byte[] prolog = in.readNBytes(PROLOG_LENGTH);
+        in.reset();
+        if (startsWith(prolog, 0xEF, 0xBB, 0xBF)) {
+            in.skip(3);
+            return StandardCharsets.UTF_8;
+        } else if (startsWith(prolog, 0xFE, 0xFF)) {
+            in.skip(2);
+            return StandardCharsets.UTF_16BE;
+        } else if (startsWith(prolog, 0xFF, 0xFE)) {
+            in.skip(2);
+            return StandardCharsets.UTF_16LE;
+        } else if (startsWith(prolog, 0x00, '<')) {
+            return StandardCharsets.UTF_16BE;
+        } else if (startsWith(prolog, '<', 0x00)) {
+            return StandardCharsets.UTF_16LE;
+        }
+        // the declaration itself is ASCII in any other encoding
+        final Matcher declaration = ENCODING_DECLARATION.matcher(new String(prolog, StandardCharsets.ISO_8859_1));
+        return declaration.find() ? Charset.forName(declaration.group(1)) : StandardCharsets.UTF_8;
+    }
+
+    private static boolean startsWith(final byte[] bytes, final int... prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xFF) != prefix[i]) {
+                return false;
             }
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
         }
+        return true;
+    }
+
+    /**
+     * Sets the size up to which decoded binaryContent is held in memory. Larger content is decoded to a temporary
+     * file, which is deleted once the object has been processed.
+     * @param binaryContentThreshold the threshold in bytes
+     */
+    public void setBinaryContentThreshold(final int binaryContentThreshold) {
+        this.binaryContentThreshold = binaryContentThreshold;
     }
 
     @Override
@@ -181,6 +241,7 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
         try {
             handler.processObjectProperties(readProperties());
             while (reader.hasNext()) {
+                source.release(charOffset());
                 if (reader.isCharacters()) {
                     if (!reader.isWhiteSpace()) {
                         throw new RuntimeException("Unexpected character data! \"" + reader.getText() + "\"");
@@ -257,7 +318,7 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
             LOG.warn("Failed to close reader cleanly", e);
         }
         try {
-            stream.close();
+            source.close();
         } catch (IOException e) {
             LOG.warn("Failed to close file cleanly", e);
         }
@@ -272,15 +333,12 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
     }
 
     private ObjectProperties readProperties() throws JAXBException, XMLStreamException {
-        final JAXBContext jc = JAXBContext.newInstance(FoxmlObjectProperties.class);
-        final Unmarshaller unmarshaller = jc.createUnmarshaller();
-        final JAXBElement<FoxmlObjectProperties> p = unmarshaller.unmarshal(reader, FoxmlObjectProperties.class);
-        final FoxmlObjectProperties properties = p.getValue();
-        return properties;
+        return JaxbUnmarshallers.unmarshal(reader, FoxmlObjectProperties.class);
     }
 
     private void readUntilClosed(final String name, final String namespace) throws XMLStreamException {
         while (reader.hasNext()) {
+            source.release(charOffset());
             if (reader.isEndElement() && reader.getLocalName().equals(name)
                     && reader.getNamespaceURI().equals(namespace)) {
                 return;
@@ -291,6 +349,20 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
         }
     }
 
+    /**
+     * @return the source offset of the start of the current event
+     */
+    private long charOffset() {
+        final long offset = reader instanceof XMLStreamReader2 ?
+                ((XMLStreamReader2) reader).getLocationInfo().getStartingCharOffset() :
+                reader.getLocation().getCharacterOffset();
+        if (offset < 0) {
+            throw new IllegalStateException("The XML reader of " + file + " does not report character offsets,"
+                    + " which are needed to copy inline XML from the source");
+        }
+        return offset;
+    }
+
     private class Foxml11DatastreamInfo implements DatastreamInfo {
 
         private String id;
@@ -385,6 +457,7 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
             reader.next();
 
             while (reader.hasNext()) {
+                source.release(charOffset());
                 if (reader.isCharacters()) {
                     if (!reader.isWhiteSpace()) {
                         throw new RuntimeException("Unexpected character data! \"" + reader.getText() + "\"");
@@ -397,11 +470,8 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
                         final Map<String, String> attributes = getAttributes(reader, "TYPE", "DIGEST");
                         this.contentDigest = new DefaultContentDigest(attributes.get("TYPE"), attributes.get("DIGEST"));
                     } else if (localName.equals("xmlContent")) {
-                        // this XML fragment may not be valid out of context
-                        // context, so write it out as a complete XML
-                        // file...
-                        reader.next();
-
+                        // this XML fragment may not be valid out of context,
+                        // so it is copied verbatim from the source
                         isInlineXml = true;
                         dsContent = new MemoryCachedContent(extractInlineXml());
                     } else if (localName.equals("contentLocation")) {
@@ -420,20 +490,7 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
                             }
                         }
                     } else if (localName.equals("binaryContent")) {
-                        try {
-                            final File f = File.createTempFile("decoded", "file");
-                            tempFiles.add(f);
-                            final Base64OutputStream out = new Base64OutputStream(
-                                    new BufferedOutputStream(new FileOutputStream(f)), false);
-                            while (reader.next() == XMLStreamConstants.CHARACTERS) {
-                                out.write(reader.getText().getBytes("UTF-8"));
-                            }
-                            out.flush();
-                            out.close();
-                            dsContent = new FileCachedContent(f);
-                        } catch (final IOException e) {
-                            throw new RuntimeException(e);
-                        }
+                        dsContent = decodeBinaryContent();
                         readUntilClosed("binaryContent", FOXML_NS);
                     } else {
                         throw new RuntimeException("Unexpected element! \"" + reader.getLocalName() + "\"!");
@@ -458,18 +515,68 @@ public class FoxmlInputStreamFedoraObjectProcessor implements FedoraObjectProces
             return dsContent.getFile();
         }
 
-        private String extractInlineXml() throws XMLStreamException {
-            final XMLEventReader eventReader = XMLInputFactory2.newFactory().createXMLEventReader(reader);
-            while (eventReader.hasNext()) {
-                final XMLEvent event = eventReader.nextEvent();
-                if (event.isEndElement()
-                        && event.asEndElement().getName().getLocalPart().equals("xmlContent")
-                        && event.asEndElement().getName().getNamespaceURI().equals(FOXML_NS)) {
-                    break;
+        /**
+         * Decodes the base64 text of the current binaryContent element as it is read. The text is copied straight
+         * from the reader's character buffer, and the decoded content is kept in memory unless it is larger than the
+         * binaryContentThreshold.
+         *
+         * @return the decoded content
+         * @throws XMLStreamException xml stream exception
+         */
+        private CachedContent decodeBinaryContent() throws XMLStreamException {
+            final var out = new DeferredFileOutputStream(binaryContentThreshold, "decoded", "file", null);
+            try (final var decoder = new Base64OutputStream(out, false)) {
+                final byte[] chunk = new byte[8192];
+                while (reader.next() == XMLStreamConstants.CHARACTERS) {
+                    source.release(charOffset());
+                    final char[] text = reader.getTextCharacters();
+                    final int start = reader.getTextStart();
+                    final int length = reader.getTextLength();
+                    for (int offset = 0; offset < length; offset += chunk.length) {
+                        final int count = Math.min(chunk.length, length - offset);
+                        // base64 is ASCII, so each char is a single byte
+                        for (int i = 0; i < count; i++) {
+                            chunk[i] = (byte) text[start + offset + i];
+                        }
+                        decoder.write(chunk, 0, count);
+                    }
+                }
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                if (!out.isInMemory()) {
+                    tempFiles.add(out.getFile());
+                }
+            }
+
+            if (out.isInMemory()) {
+                return new MemoryCachedContent(out.getData());
+            }
+            return new FileCachedContent(out.getFile());
+        }
+
+        /**
+         * Reads to the end of the current xmlContent element, and copies its content from the source.
+         *
+         * @return the inline XML, as found in the FOXML
+         * @throws XMLStreamException xml stream exception
+         */
+        private byte[] extractInlineXml() throws XMLStreamException {
+            final long startTagOffset = charOffset();
+            int depth = 0;
+            while (reader.hasNext()) {
+                reader.next();
+                if (reader.isStartElement()) {
+                    depth++;
+                } else if (reader.isEndElement()) {
+                    if (depth == 0) {
+                        break;
+                    }
+                    depth--;
                 }
             }
 
-            return inlineXml.removeFirst();
+            return source.elementContent(startTagOffset, charOffset()).getBytes(StandardCharsets.UTF_8);
         }
 
         private void validateInlineXml() {
@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+
+/**
+ * Estimates the number of bytes a migration of an object reads, as the size of its FOXML file plus the sizes
+ * declared by the SIZE attributes of the versions of its managed datastreams, whose content is stored outside of the
+ * FOXML. The estimate is used to schedule the largest objects first.
+ */
+public class FoxmlSizeEstimator {
+
+    private static final Logger LOGGER = getLogger(FoxmlSizeEstimator.class);
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+
+    private FoxmlSizeEstimator() {
+    }
+
+    /**
+     * @param foxml the FOXML file of an object
+     * @return the estimated size of the object in bytes, or the size of the FOXML file if it cannot be parsed
+     * @throws IOException IO exception reading the file
+     */
+    public static long estimate(final Path foxml) throws IOException {
+        final long foxmlSize = Files.size(foxml);
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(foxml), 1 << 16)) {
+            return foxmlSize + managedContentSize(FACTORY.createXMLStreamReader(in));
+        } catch (final XMLStreamException | NumberFormatException e) {
+            LOGGER.debug("Unable to read the datastream sizes of {}: {}", foxml, e.getMessage());
+            return foxmlSize;
+        }
+    }
+
+    private static long managedContentSize(final XMLStreamReader reader) throws XMLStreamException {
+        try {
+            long size = 0;
+            String controlGroup = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String name = reader.getLocalName();
+                if (name.equals("datastream")) {
+                    controlGroup = reader.getAttributeValue(null, "CONTROL_GROUP");
+                } else if (name.equals("datastreamVersion") && "M".equals(controlGroup)) {
+                    final String declared = reader.getAttributeValue(null, "SIZE");
+                    if (declared != null) {
+                        size += Math.max(0, Long.parseLong(declared));
+                    }
+                }
+            }
+            return size;
+        } finally {
+            reader.close();
+        }
+    }
+
+}
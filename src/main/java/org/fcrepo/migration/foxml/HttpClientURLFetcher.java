@@ -6,32 +6,239 @@
  */
 package org.fcrepo.migration.foxml;
 
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
 /**
- *
+ * A URLFetcher that keeps a pool of keep-alive connections, with a limit on the connections to each host.
+ * <p>
+ * The connection of a fetch is returned to the pool when the returned stream is closed. Requests that fail to
+ * connect, time out, or are answered with a status that may be temporary (429 or 5xx) are retried with exponential
+ * backoff; any other unsuccessful status fails the fetch. With a {@link URLContentCache}, content that is already
+ * cached is served from the cache, after a conditional request if it was cached by an earlier run.
+ * </p>
  * @author mdurbin
  *
  */
-public class HttpClientURLFetcher implements URLFetcher {
+public class HttpClientURLFetcher implements URLFetcher, Closeable {
+
+    private static final Logger LOGGER = getLogger(HttpClientURLFetcher.class);
+
+    /**
+     * The default number of connections to each host.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+    /**
+     * The default connect and read timeout, in milliseconds.
+     */
+    public static final int DEFAULT_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * The default number of times a failed request is retried.
+     */
+    public static final int DEFAULT_RETRIES = 3;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+
+    private static final Set<Integer> RETRIED_STATUSES = Set.of(429, 500, 502, 503, 504);
+
+    // idle connections are checked before reuse after this long, as the server may have closed them
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
 
     CloseableHttpClient httpClient;
 
+    private final int retries;
+
+    private URLContentCache cache;
+
     /**
      * Http Client URL fetcher.
      */
     public HttpClientURLFetcher() {
-        httpClient = HttpClients.createDefault();
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_TIMEOUT_MILLIS, DEFAULT_RETRIES);
+    }
+
+    /**
+     * Http Client URL fetcher.
+     * @param maxConnectionsPerHost the number of connections kept to each host
+     * @param timeoutMillis the timeout to connect, to wait for data, and to wait for a pooled connection
+     * @param retries the number of times a failed request is retried
+     */
+    public HttpClientURLFetcher(final int maxConnectionsPerHost, final int timeoutMillis, final int retries) {
+        if (maxConnectionsPerHost < 1 || timeoutMillis < 0 || retries < 0) {
+            throw new IllegalArgumentException("Invalid HTTP fetcher configuration: " + maxConnectionsPerHost
+                    + " connections per host, " + timeoutMillis + " ms timeout, " + retries + " retries");
+        }
+        this.retries = retries;
+        final var connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+        connectionManager.setMaxTotal(Math.max(connectionManager.getMaxTotal(), maxConnectionsPerHost * 4));
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        final var requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // retries are made here, with backoff
+                .disableAutomaticRetries()
+                .evictIdleConnections(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Sets the cache of fetched content.
+     * @param cache the cache, or null to fetch all content
+     */
+    public void setCache(final URLContentCache cache) {
+        this.cache = cache;
     }
 
     @Override
     public InputStream getContentAtUrl(final URL url) throws IOException {
-        return httpClient.execute(new HttpGet(String.valueOf(url))).getEntity().getContent();
+        if (cache != null) {
+            final InputStream cached = cache.openValidated(url);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 0; ; attempt++) {
+            final URLContentCache.Entry cached = cache == null ? null : cache.get(url);
+            final HttpGet request = new HttpGet(String.valueOf(url));
+            if (cached != null && cached.getETag() != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+            }
+            if (cached != null && cached.getLastModified() != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+            }
+            String failure = null;
+            IOException cause = null;
+            CloseableHttpResponse response = null;
+            try {
+                response = httpClient.execute(request);
+            } catch (final IOException e) {
+                cause = e;
+                failure = e.toString();
+            }
+            if (response != null) {
+                final int status = response.getStatusLine().getStatusCode();
+                if (status >= 200 && status < 300 && response.getEntity() != null) {
+                    final InputStream content = new ResponseInputStream(response, response.getEntity());
+                    return cache == null ? content : cache.store(url, header(response, HttpHeaders.ETAG),
+                            header(response, HttpHeaders.LAST_MODIFIED), content);
+                }
+                if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                    response.close();
+                    final InputStream content = cache.revalidated(url, cached);
+                    // otherwise the content was evicted by another thread since the request was made
+                    return content != null ? content : getContentAtUrl(url);
+                }
+                response.close();
+                failure = "HTTP status " + status;
+                if (!RETRIED_STATUSES.contains(status)) {
+                    throw new IOException("Unable to fetch " + url + ": " + failure);
+                }
+            }
+
+            if (attempt >= retries) {
+                throw new IOException("Unable to fetch " + url + " after " + (attempt + 1) + " attempts: "
+                        + failure, cause);
+            }
+            LOGGER.warn("Fetching {} failed ({}), retrying in {} ms", url, failure, backoff);
+            try {
+                Thread.sleep(backoff);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while retrying " + url);
+            }
+            backoff *= 2;
+        }
+    }
+
+    private static String header(final CloseableHttpResponse response, final String name) {
+        final Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * The content of a response, which releases the response when it is closed. The connection is returned to the
+     * pool only when the content was read to the end; otherwise it is closed, rather than drained of the rest of the
+     * content.
+     */
+    private static class ResponseInputStream extends FilterInputStream {
+
+        private final CloseableHttpResponse response;
+
+        private boolean eof;
+
+        ResponseInputStream(final CloseableHttpResponse response, final HttpEntity entity) throws IOException {
+            super(content(response, entity));
+            this.response = response;
+        }
+
+        private static InputStream content(final CloseableHttpResponse response, final HttpEntity entity)
+                throws IOException {
+            try {
+                return entity.getContent();
+            } catch (final IOException | RuntimeException e) {
+                response.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            eof = b == -1;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            eof = read == -1;
+            return read;
+        }
 
+        @Override
+        public void close() throws IOException {
+            try {
+                if (eof) {
+                    // releases the connection for reuse
+                    super.close();
+                }
+            } finally {
+                // aborts the connection if it was not released
+                response.close();
+            }
+        }
     }
 }
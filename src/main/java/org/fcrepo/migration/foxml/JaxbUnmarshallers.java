@@ -0,0 +1,104 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+
+/**
+ * Unmarshals the JAXB annotated FOXML types, sharing one JAXBContext per type.
+ * <p>
+ * Creating a JAXBContext is expensive, and a context is thread-safe, so each one is created once. Unmarshallers are
+ * not thread-safe, so they are pooled and each one is used by one thread at a time. A pool is used instead of a
+ * ThreadLocal so that unmarshallers are also reused when objects are migrated on short-lived virtual threads.
+ * </p>
+ */
+final class JaxbUnmarshallers {
+
+    private static final Map<Class<?>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    private static final Map<Class<?>, Queue<Unmarshaller>> UNMARSHALLERS = new ConcurrentHashMap<>();
+
+    private JaxbUnmarshallers() {
+        // static utility class
+    }
+
+    /**
+     * unmarshal the element at the reader's position.
+     * @param reader the reader, positioned at the start of the element
+     * @param type the type to unmarshal
+     * @param <T> the type to unmarshal
+     * @return the unmarshalled value
+     * @throws JAXBException JAXB exception
+     */
+    static <T> T unmarshal(final XMLStreamReader reader, final Class<T> type) throws JAXBException {
+        final Unmarshaller unmarshaller = borrow(type);
+        final T value = unmarshaller.unmarshal(reader, type).getValue();
+        // an unmarshaller is only reused if it completed normally
+        UNMARSHALLERS.get(type).offer(unmarshaller);
+        return value;
+    }
+
+    /**
+     * unmarshal the source's document element.
+     * @param source the source
+     * @param type the type to unmarshal
+     * @param <T> the type to unmarshal
+     * @return the unmarshalled value
+     * @throws JAXBException JAXB exception
+     */
+    static <T> T unmarshal(final Source source, final Class<T> type) throws JAXBException {
+        final Unmarshaller unmarshaller = borrow(type);
+        final T value = unmarshaller.unmarshal(source, type).getValue();
+        UNMARSHALLERS.get(type).offer(unmarshaller);
+        return value;
+    }
+
+    private static Unmarshaller borrow(final Class<?> type) throws JAXBException {
+        final Unmarshaller pooled = UNMARSHALLERS.computeIfAbsent(type, k -> new ConcurrentLinkedQueue<>()).poll();
+        if (pooled != null) {
+            return pooled;
+        }
+        return context(type).createUnmarshaller();
+    }
+
+    /**
+     * the number of idle unmarshallers pooled for a type.
+     * @param type the type
+     * @return the number of pooled unmarshallers
+     */
+    static int pooled(final Class<?> type) {
+        final Queue<Unmarshaller> pool = UNMARSHALLERS.get(type);
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * the shared context for a type, created on first use.
+     * @param type the type
+     * @return the context
+     * @throws JAXBException JAXB exception
+     */
+    static JAXBContext context(final Class<?> type) throws JAXBException {
+        final JAXBContext context = CONTEXTS.get(type);
+        if (context != null) {
+            return context;
+        }
+        // a context may be created twice by racing threads, which is harmless
+        final JAXBContext created = JAXBContext.newInstance(type);
+        final JAXBContext existing = CONTEXTS.putIfAbsent(type, created);
+        return existing != null ? existing : created;
+    }
+
+}
@@ -27,6 +27,30 @@ public class LegacyFSIDResolver extends DirectoryScanningIDResolver {
         super(indexDir, dsRoot);
     }
 
+    /**
+     * Constructor selecting the kind of index.
+     * @param indexDir A directory that will serve as an index directory to cache ID resolution.
+     * @param dsRoot the root directory of the legacy datastream store.
+     * @param indexType the kind of index to use
+     * @throws IOException IO exception creating temp and index files/directories
+     */
+    public LegacyFSIDResolver(final File indexDir, final File dsRoot, final IndexType indexType) throws IOException {
+        super(indexDir, dsRoot, indexType);
+    }
+
+    /**
+     * Constructor selecting the kind of index, and whether an existing index is refreshed.
+     * @param indexDir A directory that will serve as an index directory to cache ID resolution.
+     * @param dsRoot the root directory of the legacy datastream store.
+     * @param indexType the kind of index to use
+     * @param refresh if true, rescan the directories modified since the index was built or last refreshed
+     * @throws IOException IO exception creating temp and index files/directories
+     */
+    public LegacyFSIDResolver(final File indexDir, final File dsRoot, final IndexType indexType,
+                              final boolean refresh) throws IOException {
+        super(indexDir, dsRoot, indexType, refresh);
+    }
+
     /**
      * Basic constructor.
      * @param dsRoot the root directory of the AkubraFS datastream store.
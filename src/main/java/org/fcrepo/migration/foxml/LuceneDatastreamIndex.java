@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+
+/**
+ * A DatastreamIndex stored as a lucene index.
+ * <p>
+ * For every file found in the datastream directory a document exists in this index that contains an "id" field and a
+ * "path" field. The id field is the internal id, the path field is the full path to the file containing that
+ * datastream content. An unstored "dir" field holds the directory of the file, so that the entries for a directory
+ * can be replaced when the index is refreshed.
+ * </p>
+ */
+class LuceneDatastreamIndex implements DatastreamIndex {
+
+    private final FSDirectory fsDirectory;
+    private final IndexReader reader;
+    private final IndexSearcher searcher;
+
+    private LuceneDatastreamIndex(final File indexDir) throws IOException {
+        fsDirectory = FSDirectory.open(indexDir.toPath());
+        reader = DirectoryReader.open(fsDirectory);
+        searcher = new IndexSearcher(reader);
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @return true if the directory contains a lucene index
+     * @throws IOException IO exception
+     */
+    static boolean exists(final File indexDir) throws IOException {
+        if (!indexDir.exists()) {
+            return false;
+        }
+        try (final FSDirectory dir = FSDirectory.open(indexDir.toPath())) {
+            return DirectoryReader.indexExists(dir);
+        }
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @return the index in the directory
+     * @throws IOException IO exception
+     */
+    static LuceneDatastreamIndex open(final File indexDir) throws IOException {
+        return new LuceneDatastreamIndex(indexDir);
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @return a writer for a new index in the directory, replacing any existing lucene index
+     * @throws IOException IO exception
+     */
+    static DatastreamIndex.Writer create(final File indexDir) throws IOException {
+        return writer(indexDir, IndexWriterConfig.OpenMode.CREATE);
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @return a writer that modifies the existing index in the directory
+     * @throws IOException IO exception
+     */
+    static DatastreamIndex.Writer update(final File indexDir) throws IOException {
+        return writer(indexDir, IndexWriterConfig.OpenMode.APPEND);
+    }
+
+    private static DatastreamIndex.Writer writer(final File indexDir, final IndexWriterConfig.OpenMode mode)
+            throws IOException {
+        final IndexWriterConfig iwc = new IndexWriterConfig(new StandardAnalyzer());
+        iwc.setOpenMode(mode);
+        final FSDirectory dir = FSDirectory.open(indexDir.toPath());
+        final IndexWriter writer = new IndexWriter(dir, iwc);
+
+        return new DatastreamIndex.Writer() {
+            @Override
+            public void add(final String id, final String path) throws IOException {
+                final Document doc = new Document();
+                doc.add(new StringField("path", path, Field.Store.YES));
+                doc.add(new StringField("id", id, Field.Store.YES));
+                doc.add(new StringField("dir", DatastreamIndex.directoryOf(path), Field.Store.NO));
+                writer.addDocument(doc);
+            }
+
+            @Override
+            public void removeDirectory(final String dir) throws IOException {
+                // only applies to documents added before the call, as the directory's files are re-added after it
+                writer.deleteDocuments(new Term("dir", dir));
+            }
+
+            @Override
+            public void close() throws IOException {
+                try (dir; writer) {
+                    writer.commit();
+                }
+            }
+        };
+    }
+
+    @Override
+    public List<String> lookup(final String id) throws IOException {
+        final List<String> paths = new ArrayList<>();
+        for (final ScoreDoc scoreDoc : searcher.search(new TermQuery(new Term("id", id)), 2).scoreDocs) {
+            paths.add(searcher.doc(scoreDoc.doc).get("path"));
+        }
+        return paths;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        fsDirectory.close();
+    }
+
+}
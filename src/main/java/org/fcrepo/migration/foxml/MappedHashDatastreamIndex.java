@@ -0,0 +1,362 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.hash.Hashing;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A DatastreamIndex stored as a memory-mapped, open-addressing hash table.
+ * <p>
+ * The index is made of two files. The data file holds a record for every datastream file: the length and UTF-8 bytes
+ * of its id, followed by the length and UTF-8 bytes of its path. The table file holds a header followed by a
+ * power-of-two number of slots, each with the 64 bit hash of an id and the offset of its record in the data file
+ * (plus one, so that an empty slot is zero). Collisions are resolved by linear probing, and the table is kept at most
+ * half full, so a lookup usually reads one slot of the mapped table and one record from the data file.
+ * </p>
+ * <p>
+ * The table is written to a temporary file and moved into place once complete, so a partially built index is never
+ * opened. When the index is updated, the records that are kept are copied from the previous data file into a new one
+ * and the table is rebuilt, which is a sequential pass over the index rather than a scan of the datastream files.
+ * </p>
+ */
+class MappedHashDatastreamIndex implements DatastreamIndex {
+
+    static final String TABLE_FILE = "datastreams.table";
+    static final String DATA_FILE = "datastreams.data";
+
+    private static final long MAGIC = 0x4633445349445831L; // "F3DSIDX1"
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 16;
+
+    // each mapped segment of the table holds 2^26 slots (1 GiB)
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    // records are read in one request when they fit
+    private static final int RECORD_READ_BYTES = 512;
+
+    private final FileChannel data;
+    private final MappedByteBuffer[] segments;
+    private final long mask;
+
+    private MappedHashDatastreamIndex(final File indexDir) throws IOException {
+        try (final FileChannel table = FileChannel.open(tablePath(indexDir), READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(table, header, 0);
+            if (header.getLong(0) != MAGIC) {
+                throw new IOException("Not a datastream index: " + tablePath(indexDir));
+            }
+            final long capacity = header.getLong(8);
+            mask = capacity - 1;
+            segments = map(table, capacity, FileChannel.MapMode.READ_ONLY);
+        }
+        data = FileChannel.open(dataPath(indexDir), READ);
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @return true if the directory contains a complete hash index
+     * @throws IOException IO exception
+     */
+    static boolean exists(final File indexDir) throws IOException {
+        final Path table = tablePath(indexDir);
+        if (!Files.exists(table) || Files.size(table) < HEADER_BYTES || !Files.exists(dataPath(indexDir))) {
+            return false;
+        }
+        try (final FileChannel channel = FileChannel.open(table, READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            return header.getLong(0) == MAGIC;
+        }
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @return the index in the directory
+     * @throws IOException IO exception
+     */
+    static MappedHashDatastreamIndex open(final File indexDir) throws IOException {
+        return new MappedHashDatastreamIndex(indexDir);
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @return a writer for a new index in the directory, replacing any existing hash index
+     * @throws IOException IO exception
+     */
+    static DatastreamIndex.Writer create(final File indexDir) throws IOException {
+        Files.createDirectories(indexDir.toPath());
+        Files.deleteIfExists(tablePath(indexDir));
+        Files.deleteIfExists(previousDataPath(indexDir));
+        return new HashIndexWriter(indexDir, null);
+    }
+
+    /**
+     * @param indexDir the index directory
+     * @return a writer that modifies the existing index in the directory
+     * @throws IOException IO exception
+     */
+    static DatastreamIndex.Writer update(final File indexDir) throws IOException {
+        // the index is incomplete, and will be rebuilt from scratch, until the writer is closed
+        Files.deleteIfExists(tablePath(indexDir));
+        final Path previous = previousDataPath(indexDir);
+        Files.move(dataPath(indexDir), previous, REPLACE_EXISTING, ATOMIC_MOVE);
+        return new HashIndexWriter(indexDir, previous);
+    }
+
+    @Override
+    public List<String> lookup(final String id) throws IOException {
+        final List<String> paths = new ArrayList<>(1);
+        final long hash = hash(id);
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            final int index = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+            final long offset = segment.getLong(index + 8);
+            if (offset == 0) {
+                return paths;
+            }
+            if (segment.getLong(index) == hash) {
+                final String[] record = readRecord(offset - 1);
+                if (record[0].equals(id)) {
+                    paths.add(record[1]);
+                    if (paths.size() == 2) {
+                        return paths;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+
+    private String[] readRecord(final long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_READ_BYTES);
+        read(data, buffer, position);
+        final int idLength = buffer.getInt(0);
+        final int pathLength = buffer.limit() >= 8 + idLength ?
+                buffer.getInt(4 + idLength) : readInt(position + 4 + idLength);
+        if (buffer.limit() < 8 + idLength + pathLength) {
+            // the record is larger than the first read
+            buffer = ByteBuffer.allocate(8 + idLength + pathLength);
+            readFully(data, buffer, position);
+        }
+        final String id = new String(buffer.array(), 4, idLength, UTF_8);
+        final String path = new String(buffer.array(), 8 + idLength, pathLength, UTF_8);
+        return new String[] {id, path};
+    }
+
+    private int readInt(final long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4);
+        readFully(data, buffer, position);
+        return buffer.getInt(0);
+    }
+
+    private static long hash(final String id) {
+        return Hashing.murmur3_128().hashString(id, UTF_8).asLong();
+    }
+
+    private static MappedByteBuffer[] map(final FileChannel table, final long capacity,
+                                          final FileChannel.MapMode mode) throws IOException {
+        final int count = (int) ((capacity + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        final MappedByteBuffer[] segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final long first = (long) i << SEGMENT_SHIFT;
+            final long slots = Math.min(capacity - first, 1L << SEGMENT_SHIFT);
+            segments[i] = table.map(mode, HEADER_BYTES + first * SLOT_BYTES, slots * SLOT_BYTES);
+        }
+        return segments;
+    }
+
+    /**
+     * Reads up to the buffer's capacity, stopping early only at the end of the file. The buffer's limit is set to
+     * the number of bytes read.
+     */
+    private static void read(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        read(channel, buffer, position);
+        if (buffer.limit() < buffer.capacity()) {
+            throw new EOFException("Datastream index is truncated");
+        }
+    }
+
+    private static Path tablePath(final File indexDir) {
+        return indexDir.toPath().resolve(TABLE_FILE);
+    }
+
+    private static Path dataPath(final File indexDir) {
+        return indexDir.toPath().resolve(DATA_FILE);
+    }
+
+    private static Path previousDataPath(final File indexDir) {
+        return indexDir.toPath().resolve(DATA_FILE + ".previous");
+    }
+
+    /**
+     * Appends records to the data file as entries are added, and builds the table from the data file when closed,
+     * so the entries never need to be held in memory.
+     */
+    private static class HashIndexWriter implements DatastreamIndex.Writer {
+
+        private final File indexDir;
+        private final Path previous;
+        private final Set<String> removedDirectories = ConcurrentHashMap.newKeySet();
+        private final DataOutputStream out;
+        private long offset;
+        private long count;
+
+        HashIndexWriter(final File indexDir, final Path previous) throws IOException {
+            this.indexDir = indexDir;
+            this.previous = previous;
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(dataPath(indexDir), CREATE, TRUNCATE_EXISTING, WRITE), 1 << 16));
+        }
+
+        @Override
+        public synchronized void add(final String id, final String path) throws IOException {
+            write(id.getBytes(UTF_8), path.getBytes(UTF_8));
+        }
+
+        @Override
+        public void removeDirectory(final String dir) {
+            removedDirectories.add(dir);
+        }
+
+        private void write(final byte[] idBytes, final byte[] pathBytes) throws IOException {
+            out.writeInt(idBytes.length);
+            out.write(idBytes);
+            out.writeInt(pathBytes.length);
+            out.write(pathBytes);
+            offset += 8 + idBytes.length + pathBytes.length;
+            count++;
+        }
+
+        /**
+         * Copies the records of the previous data file that are not in a removed directory.
+         */
+        private void copyPrevious() throws IOException {
+            try (final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(previous), 1 << 16))) {
+                final long size = Files.size(previous);
+                long position = 0;
+                while (position < size) {
+                    final byte[] idBytes = new byte[in.readInt()];
+                    in.readFully(idBytes);
+                    final byte[] pathBytes = new byte[in.readInt()];
+                    in.readFully(pathBytes);
+                    if (!removedDirectories.contains(DatastreamIndex.directoryOf(new String(pathBytes, UTF_8)))) {
+                        write(idBytes, pathBytes);
+                    }
+                    position += 8 + idBytes.length + pathBytes.length;
+                }
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                if (previous != null) {
+                    copyPrevious();
+                }
+            } finally {
+                out.close();
+            }
+
+            // at most half full, so probe sequences stay short
+            final long capacity = Math.max(16, Long.highestOneBit(Math.max(1, count * 2 - 1)) << 1);
+            final long mask = capacity - 1;
+            final Path tmp = indexDir.toPath().resolve(TABLE_FILE + ".tmp");
+
+            try (final FileChannel table = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+                // sparse, all slots start empty
+                table.write(ByteBuffer.allocate(1), HEADER_BYTES + capacity * SLOT_BYTES - 1);
+                final MappedByteBuffer[] segments = map(table, capacity, FileChannel.MapMode.READ_WRITE);
+
+                try (final DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(dataPath(indexDir)), 1 << 16))) {
+                    long position = 0;
+                    while (position < offset) {
+                        final byte[] idBytes = new byte[in.readInt()];
+                        in.readFully(idBytes);
+                        final int pathLength = in.readInt();
+                        IOUtils.skipFully(in, pathLength);
+
+                        final long hash = hash(new String(idBytes, UTF_8));
+                        long slot = hash & mask;
+                        while (true) {
+                            final MappedByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+                            final int index = (int) (slot & SEGMENT_MASK) * SLOT_BYTES;
+                            if (segment.getLong(index + 8) == 0) {
+                                segment.putLong(index, hash);
+                                segment.putLong(index + 8, position + 1);
+                                break;
+                            }
+                            slot = (slot + 1) & mask;
+                        }
+                        position += 8 + idBytes.length + pathLength;
+                    }
+                }
+
+                for (final MappedByteBuffer segment : segments) {
+                    segment.force();
+                }
+
+                // the header is written last, marking the index as complete
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putLong(MAGIC).putLong(capacity).putLong(count).flip();
+                while (header.hasRemaining()) {
+                    table.write(header, header.position());
+                }
+                table.force(true);
+            }
+
+            Files.move(tmp, tablePath(indexDir), REPLACE_EXISTING, ATOMIC_MOVE);
+            if (previous != null) {
+                Files.delete(previous);
+            }
+        }
+    }
+
+}
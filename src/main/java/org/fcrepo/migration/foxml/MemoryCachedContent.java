@@ -9,26 +9,35 @@ package org.fcrepo.migration.foxml;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A CachedContent implementation that stores the entirety of the content
- * in memory as String.
+ * in memory.
  * @author mdurbin
  */
 public class MemoryCachedContent implements CachedContent {
 
-    private String content;
+    private byte[] content;
 
     /**
      * memory cached content.
      * @param content the content
      */
     public MemoryCachedContent(final String content) {
+        this(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * memory cached content.
+     * @param content the content bytes
+     */
+    public MemoryCachedContent(final byte[] content) {
         this.content = content;
     }
 
     @Override
     public InputStream getInputStream() throws IOException {
-        return new ByteArrayInputStream(content.getBytes("UTF-8"));
+        return new ByteArrayInputStream(content);
     }
 }
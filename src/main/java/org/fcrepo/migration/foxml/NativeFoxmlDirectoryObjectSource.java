@@ -35,6 +35,10 @@ public class NativeFoxmlDirectoryObjectSource implements ObjectSource {
      */
     private FileFilter fileFilter = new RegexFileFilter(Pattern.compile("^[^\\.].*$"));
 
+    private int binaryContentThreshold = FoxmlInputStreamFedoraObjectProcessor.DEFAULT_BINARY_CONTENT_THRESHOLD;
+
+    private int prefetch = FoxmlDirectoryIterator.DEFAULT_PREFETCH;
+
     /**
      * A constructor for use with the data storage directories that underly a
      * fedora 3.x repository.  First, this constructor will build an index of
@@ -71,9 +75,29 @@ public class NativeFoxmlDirectoryObjectSource implements ObjectSource {
         this.fileFilter = fileFilter;
     }
 
+    /**
+     * Sets the size up to which the decoded content of binaryContent elements is held in memory, rather than
+     * written to a temporary file.
+     * @param binaryContentThreshold the threshold in bytes
+     */
+    public void setBinaryContentThreshold(final int binaryContentThreshold) {
+        this.binaryContentThreshold = binaryContentThreshold;
+    }
+
+    /**
+     * Sets the number of objects opened ahead of the migration by a background thread.
+     * @param prefetch the number of objects, or 0 to open each object when it is requested
+     */
+    public void setPrefetch(final int prefetch) {
+        this.prefetch = prefetch;
+    }
+
     @Override
     public Iterator<FedoraObjectProcessor> iterator() {
-        return new FoxmlDirectoryDFSIterator(root, resolver, fetcher, localFedoraServer, fileFilter);
+        final var iterator = new FoxmlDirectoryIterator(root, resolver, fetcher, localFedoraServer, fileFilter);
+        iterator.setBinaryContentThreshold(binaryContentThreshold);
+        iterator.setPrefetch(prefetch);
+        return iterator;
     }
 
 }
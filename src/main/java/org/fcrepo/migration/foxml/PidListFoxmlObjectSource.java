@@ -0,0 +1,157 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.fcrepo.migration.FedoraObjectProcessor;
+import org.fcrepo.migration.ObjectSource;
+
+/**
+ * An ObjectSource for the objects listed in a PID file, which locates the FOXML file of each listed PID in the
+ * object store of a fedora 3.x repository, rather than enumerating every object in the store.
+ * <p>
+ * The FOXML files are located by an InternalIDResolver for the object store: an {@link AkubraHashPathIDResolver}
+ * computes the path of each object in an AkubraFS store, and a {@link LegacyFSIDResolver} looks up each object in a
+ * persisted index of a legacy-fs store. The PIDs are migrated in the order of the file, which is read a line at a
+ * time; a PID whose FOXML file cannot be found fails as an unreadable object.
+ * </p>
+ */
+public class PidListFoxmlObjectSource implements ObjectSource {
+
+    private final File pidFile;
+
+    private final InternalIDResolver objectResolver;
+
+    private final InternalIDResolver resolver;
+
+    private URLFetcher fetcher;
+
+    private final String localFedoraServer;
+
+    private int binaryContentThreshold = FoxmlInputStreamFedoraObjectProcessor.DEFAULT_BINARY_CONTENT_THRESHOLD;
+
+    /**
+     * Constructor.
+     * @param pidFile a file listing the PIDs of the objects, one per line
+     * @param objectResolver an InternalIDResolver that resolves a PID to the FOXML file of the object
+     * @param resolver an InternalIDResolver implementation that can resolve
+     *                 references to internally managed datastreams.
+     * @param localFedoraServer the domain and port for the server that hosted the fedora objects in the format
+     *                          "localhost:8080".
+     */
+    public PidListFoxmlObjectSource(final File pidFile, final InternalIDResolver objectResolver,
+                                    final InternalIDResolver resolver, final String localFedoraServer) {
+        this.pidFile = pidFile;
+        this.objectResolver = objectResolver;
+        this.resolver = resolver;
+        this.fetcher = new HttpClientURLFetcher();
+        this.localFedoraServer = localFedoraServer;
+    }
+
+    /**
+     * set the fetcher.
+     * @param fetcher the fetcher
+     */
+    public void setFetcher(final URLFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Sets the size up to which the decoded content of binaryContent elements is held in memory, rather than
+     * written to a temporary file.
+     * @param binaryContentThreshold the threshold in bytes
+     */
+    public void setBinaryContentThreshold(final int binaryContentThreshold) {
+        this.binaryContentThreshold = binaryContentThreshold;
+    }
+
+    @Override
+    public Iterator<FedoraObjectProcessor> iterator() {
+        try {
+            return new PidIterator(Files.newBufferedReader(pidFile.toPath(), UTF_8));
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read " + pidFile, e);
+        }
+    }
+
+    /**
+     * Opens the FOXML file of each PID as it is requested.
+     */
+    private class PidIterator implements Iterator<FedoraObjectProcessor>, AutoCloseable {
+
+        private final BufferedReader reader;
+
+        private String nextPid;
+
+        PidIterator(final BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (nextPid == null) {
+                    final String line = reader.readLine();
+                    if (line == null) {
+                        return false;
+                    }
+                    if (!line.isBlank()) {
+                        nextPid = line.strip();
+                    }
+                }
+                return true;
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Unable to read " + pidFile, e);
+            }
+        }
+
+        @Override
+        public FedoraObjectProcessor next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final String pid = nextPid;
+            nextPid = null;
+
+            final File file;
+            try {
+                file = objectResolver.resolveInternalID(pid).getFile().orElseThrow();
+            } catch (final RuntimeException e) {
+                throw new RuntimeException("Unable to find the FOXML file of " + pid, e);
+            }
+            try {
+                final var processor = new FoxmlInputStreamFedoraObjectProcessor(
+                        file, fetcher, resolver, localFedoraServer);
+                processor.setBinaryContentThreshold(binaryContentThreshold);
+                return processor;
+            } catch (final XMLStreamException e) {
+                throw new RuntimeException(file.getPath() + " doesn't appear to be an XML file."
+                        + (e.getMessage() != null ? "  (" + e.getMessage() + ")" : ""));
+            } catch (final FileNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+}
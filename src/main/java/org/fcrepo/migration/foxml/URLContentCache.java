@@ -0,0 +1,418 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+
+/**
+ * An on-disk cache of content fetched from URLs, bounded in size by evicting the least recently used URLs.
+ * <p>
+ * Each URL is recorded with the ETag and Last-Modified validators of its response, and its content is stored once
+ * under its SHA-256 digest, so URLs with the same content share a file. A URL fetched during a run is served from the
+ * cache for the rest of the run; a URL cached by an earlier run is revalidated with a conditional request first.
+ * Content is only cached once it has been read to the end. The index of URLs is written when the cache is closed; an
+ * index that is missing or unreadable leaves an empty cache.
+ * </p>
+ */
+public class URLContentCache implements Closeable {
+
+    private static final Logger LOGGER = getLogger(URLContentCache.class);
+
+    private static final int MAGIC = 0x55524c43;
+    private static final int VERSION = 1;
+
+    private static final String NONE = "";
+
+    private final Path index;
+    private final Path blobs;
+    private final Path tmp;
+    private final long maxSize;
+
+    // in access order, so that the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // the number of entries with each digest, so that a file is deleted with the last entry that uses it
+    private final Map<String, Integer> references = new HashMap<>();
+
+    // the URLs fetched or revalidated during this run
+    private final Set<String> validated = new HashSet<>();
+
+    private long size;
+
+    /**
+     * Opens the cache in a directory, creating it if necessary.
+     * @param dir the cache directory
+     * @param maxSize the size of the content the cache may hold, in bytes
+     * @throws IOException IO exception
+     */
+    public URLContentCache(final Path dir, final long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The size of the URL content cache must be positive: " + maxSize);
+        }
+        this.index = dir.resolve("index");
+        this.blobs = dir.resolve("blobs");
+        this.tmp = dir.resolve("tmp");
+        this.maxSize = maxSize;
+        Files.createDirectories(blobs);
+        // content that was being fetched when an earlier run stopped
+        FileUtils.deleteDirectory(tmp.toFile());
+        Files.createDirectories(tmp);
+        load();
+        evict();
+        LOGGER.info("Opened the URL content cache in {} with {} URLs ({} bytes)", dir, entries.size(), size);
+    }
+
+    /**
+     * @param url a URL
+     * @return the cached content of the URL if it was fetched or revalidated during this run, or null
+     * @throws IOException IO exception
+     */
+    public synchronized InputStream openValidated(final URL url) throws IOException {
+        final String key = url.toString();
+        final Entry entry = entries.get(key);
+        return entry != null && validated.contains(key) ? open(key, entry) : null;
+    }
+
+    /**
+     * @param url a URL
+     * @return the cache entry of the URL, whose validators can make a conditional request, or null
+     */
+    synchronized Entry get(final URL url) {
+        return entries.get(url.toString());
+    }
+
+    /**
+     * Records that the server confirmed the cached content of a URL to be current.
+     * @param url the URL
+     * @param entry the entry whose validators were sent
+     * @return the cached content, or null if the entry was evicted since
+     * @throws IOException IO exception
+     */
+    synchronized InputStream revalidated(final URL url, final Entry entry) throws IOException {
+        final String key = url.toString();
+        if (entries.get(key) != entry) {
+            return null;
+        }
+        validated.add(key);
+        return open(key, entry);
+    }
+
+    /**
+     * Caches the content of a URL as it is read.
+     * @param url the URL
+     * @param etag the ETag of the response, or null
+     * @param lastModified the Last-Modified date of the response, or null
+     * @param content the content of the response
+     * @return a stream of the content, which caches it if it is read to the end before it is closed
+     */
+    InputStream store(final URL url, final String etag, final String lastModified, final InputStream content) {
+        try {
+            return new CachingInputStream(content, url.toString(), new Entry(etag, lastModified, null, 0),
+                    Files.createTempFile(tmp, "fetch", null));
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to cache the content of {}: {}", url, e.getMessage());
+            return content;
+        }
+    }
+
+    /**
+     * Writes the index of the cache. Only the URLs that can be revalidated by a later run are written.
+     * @throws IOException IO exception
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        final Path indexTmp = index.resolveSibling("index.tmp");
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(indexTmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            // least recently used first, so that the order is restored when the index is read
+            for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+                final Entry entry = e.getValue();
+                if (entry.etag == null && entry.lastModified == null) {
+                    continue;
+                }
+                out.writeBoolean(true);
+                out.writeUTF(e.getKey());
+                out.writeUTF(entry.etag == null ? NONE : entry.etag);
+                out.writeUTF(entry.lastModified == null ? NONE : entry.lastModified);
+                out.writeUTF(entry.digest);
+                out.writeLong(entry.size);
+            }
+            out.writeBoolean(false);
+        }
+        Files.move(indexTmp, index, REPLACE_EXISTING, ATOMIC_MOVE);
+        FileUtils.deleteDirectory(tmp.toFile());
+    }
+
+    private void load() throws IOException {
+        if (Files.exists(index)) {
+            try (final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(index), 1 << 16))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("not an index of this version");
+                }
+                while (in.readBoolean()) {
+                    final String key = in.readUTF();
+                    final String etag = in.readUTF();
+                    final String lastModified = in.readUTF();
+                    final String digest = in.readUTF();
+                    final long length = in.readLong();
+                    if (Files.exists(blob(digest))) {
+                        add(key, new Entry(NONE.equals(etag) ? null : etag,
+                                NONE.equals(lastModified) ? null : lastModified, digest, length));
+                    }
+                }
+            } catch (final IOException e) {
+                LOGGER.warn("Unable to read the index of the URL content cache, starting with an empty cache: {}",
+                        e.getMessage());
+                entries.clear();
+                references.clear();
+                size = 0;
+            }
+        }
+        // content of URLs that were never indexed, or that are not in a readable index
+        try (final Stream<Path> files = Files.walk(blobs, 2)) {
+            final Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext()) {
+                final Path file = iterator.next();
+                if (!references.containsKey(file.getFileName().toString())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private synchronized void commit(final String key, final Entry entry, final Path file) throws IOException {
+        final Path blob = blob(entry.digest);
+        if (references.containsKey(entry.digest)) {
+            Files.delete(file);
+        } else {
+            Files.createDirectories(blob.getParent());
+            Files.move(file, blob, REPLACE_EXISTING, ATOMIC_MOVE);
+        }
+        // added before the replaced entry is released, which may have the same content
+        final Entry replaced = entries.remove(key);
+        add(key, entry);
+        if (replaced != null) {
+            release(replaced);
+        }
+        validated.add(key);
+        evict();
+    }
+
+    private void add(final String key, final Entry entry) {
+        entries.put(key, entry);
+        if (references.merge(entry.digest, 1, Integer::sum) == 1) {
+            size += entry.size;
+        }
+    }
+
+    private void release(final Entry entry) throws IOException {
+        if (references.merge(entry.digest, -1, Integer::sum) == 0) {
+            references.remove(entry.digest);
+            size -= entry.size;
+            Files.deleteIfExists(blob(entry.digest));
+        }
+    }
+
+    private void evict() throws IOException {
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            final Entry entry = eldest.next();
+            eldest.remove();
+            release(entry);
+        }
+    }
+
+    private InputStream open(final String key, final Entry entry) throws IOException {
+        try {
+            return Files.newInputStream(blob(entry.digest));
+        } catch (final NoSuchFileException e) {
+            LOGGER.warn("The cached content of {} has been removed", key);
+            entries.remove(key);
+            release(entry);
+            return null;
+        }
+    }
+
+    private Path blob(final String digest) {
+        return blobs.resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    /**
+     * A cached URL.
+     */
+    static class Entry {
+
+        private final String etag;
+        private final String lastModified;
+        private final String digest;
+        private final long size;
+
+        Entry(final String etag, final String lastModified, final String digest, final long size) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.size = size;
+        }
+
+        /**
+         * @return the ETag of the cached response, or null
+         */
+        String getETag() {
+            return etag;
+        }
+
+        /**
+         * @return the Last-Modified date of the cached response, or null
+         */
+        String getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Copies the content to a temporary file as it is read, and caches the file once the content has been read to
+     * the end. Caching is abandoned if the content is larger than the cache or cannot be written, without failing
+     * the read.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String key;
+        private final Entry validators;
+        private final Path file;
+        private final MessageDigest digest = DigestUtils.getSha256Digest();
+
+        private OutputStream out;
+        private long length;
+        private boolean ended;
+
+        CachingInputStream(final InputStream content, final String key, final Entry validators, final Path file)
+                throws IOException {
+            super(content);
+            this.key = key;
+            this.validators = validators;
+            this.file = file;
+            this.out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0) {
+                ended = true;
+            } else {
+                copy(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n < 0) {
+                ended = true;
+            } else {
+                copy(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped content is not copied
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                        out = null;
+                        if (ended) {
+                            commit(key, new Entry(validators.etag, validators.lastModified,
+                                    Hex.encodeHexString(digest.digest()), length), file);
+                        }
+                    } catch (final IOException e) {
+                        LOGGER.warn("Unable to cache the content of {}: {}", key, e.getMessage());
+                    }
+                }
+                Files.deleteIfExists(file);
+            }
+        }
+
+        private void copy(final byte[] b, final int off, final int len) {
+            if (out == null) {
+                return;
+            }
+            length += len;
+            if (length > maxSize) {
+                abandon();
+                return;
+            }
+            try {
+                out.write(b, off, len);
+                digest.update(b, off, len);
+            } catch (final IOException e) {
+                LOGGER.warn("Unable to cache the content of {}: {}", key, e.getMessage());
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    // the file is deleted when the stream is closed
+                }
+                out = null;
+            }
+        }
+    }
+
+}
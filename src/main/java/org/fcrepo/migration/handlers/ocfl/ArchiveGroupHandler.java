@@ -24,18 +24,12 @@ import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Triple;
-import org.apache.jena.rdf.model.Statement;
 
-import org.apache.tika.config.TikaConfig;
-import org.apache.tika.detect.Detector;
 import org.apache.tika.io.TikaInputStream;
-import org.apache.tika.metadata.Metadata;
 import org.apache.tika.mime.MimeType;
 import org.apache.tika.mime.MimeTypeException;
 import org.apache.tika.mime.MimeTypes;
@@ -56,8 +50,6 @@ import org.fcrepo.storage.ocfl.exception.NotFoundException;
 import org.slf4j.Logger;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
@@ -65,7 +57,6 @@ import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.DigestInputStream;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.time.OffsetDateTime;
@@ -74,7 +65,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -129,10 +124,13 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
     private final ResourceMigrationType resourceMigrationType;
     private final String user;
     private final String idPrefix;
-    private final Detector mimeDetector;
+    private final MimeTypeDetector mimeDetector = MimeTypeDetector.getInstance();
     private final boolean headOnly;
     private final boolean disableChecksumValidation;
     private final boolean disableDc;
+    private final ExecutorService datastreamExecutor;
+
+    private HashingEngine hashingEngine = HashingEngine.getDefault();
 
     /**
      * Create an ArchiveGroupHandler,
@@ -171,6 +169,52 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
                                final boolean headOnly,
                                final boolean disableChecksumValidation,
                                final boolean disableDc) {
+        this(sessionFactory, migrationType, resourceMigrationType, addDatastreamExtensions, deleteInactive,
+                foxmlFile, user, idPrefix, headOnly, disableChecksumValidation, disableDc, null);
+    }
+
+    /**
+     * Create an ArchiveGroupHandler that writes and commits the datastreams of an atomic resource migration in
+     * parallel.
+     *
+     * @param sessionFactory
+     *        OCFL session factory
+     * @param migrationType
+     *        the type of migration to do
+     * @param resourceMigrationType
+     *        how resources should be migrated
+     * @param addDatastreamExtensions
+     *        true if datastreams should be written with file extensions
+     * @param deleteInactive
+     *        true if inactive objects and datastreams should be migrated as deleted
+     * @param foxmlFile
+     *        true if foxml file should be migrated as a whole file, instead of creating property files
+     * @param user
+     *        the username to associated with the migrated resources
+     * @param idPrefix
+     *        the prefix to add to the Fedora 3 pid (default "info:fedora/", like Fedora 3)
+     * @param headOnly
+     *        flag to enable head only migrations
+     * @param disableChecksumValidation
+     *        disable Checksum validation
+     * @param disableDc
+     *        true if DC datastreams should not be migrated to RDF object properties
+     * @param datastreamExecutor
+     *        executor used to write and commit the datastreams of a version concurrently when migrating atomic
+     *        resources, or null to write them one after another. It must not be the executor running this handler.
+     */
+    public ArchiveGroupHandler(final OcflObjectSessionFactory sessionFactory,
+                               final MigrationType migrationType,
+                               final ResourceMigrationType resourceMigrationType,
+                               final boolean addDatastreamExtensions,
+                               final boolean deleteInactive,
+                               final boolean foxmlFile,
+                               final String user,
+                               final String idPrefix,
+                               final boolean headOnly,
+                               final boolean disableChecksumValidation,
+                               final boolean disableDc,
+                               final ExecutorService datastreamExecutor) {
         this.sessionFactory = Preconditions.checkNotNull(sessionFactory, "sessionFactory cannot be null");
         this.migrationType = Preconditions.checkNotNull(migrationType, "migrationType cannot be null");
         this.resourceMigrationType = Preconditions.checkNotNull(resourceMigrationType,
@@ -183,11 +227,15 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
         this.headOnly = headOnly;
         this.disableChecksumValidation = disableChecksumValidation;
         this.disableDc = disableDc;
-        try {
-            this.mimeDetector = new TikaConfig().getDetector();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        // datastreams only have their own sessions in atomic migrations
+        this.datastreamExecutor = resourceMigrationType == ResourceMigrationType.ATOMIC ? datastreamExecutor : null;
+    }
+
+    /**
+     * @param hashingEngine the engine that creates the digests Fedora 3 checksums are validated with
+     */
+    public void setHashingEngine(final HashingEngine hashingEngine) {
+        this.hashingEngine = hashingEngine;
     }
 
     @Override
@@ -251,125 +299,163 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
             }
 
             final var datastreamSessions = new HashMap<String, OcflObjectSession>();
+            // pending datastream content writes, when datastreams are written in parallel
+            final var datastreamWrites = new ArrayList<Future<?>>();
+            // set when the object fails, so that the pending writes are skipped
+            final var failed = new AtomicBoolean();
+            // content opened for mime type detection that has not been handed to its write yet
+            InputStream unwrittenContent = null;
 
-            // Write datastreams and their metadata
-            for (var dv : ov.listChangedDatastreams()) {
-                final var mimeType = resolveMimeType(dv);
-                final String dsId = dv.getDatastreamInfo().getDatastreamId();
-                final String f6DsId = resolveF6DatastreamId(dsId, f6ObjectId);
-                final var datastreamFilename = lastPartFromId(f6DsId);
-
-                final var datastreamSession = datastreamSession(f6DsId, objectSession);
-                datastreamSessions.putIfAbsent(f6DsId, datastreamSession);
-
-                if (dv.isFirstVersionIn(ov.getObject())) {
-                    dsCreateDates.put(dsId, dv.getCreated());
-                    datastreamStates.put(f6DsId, dv.getDatastreamInfo().getState());
-                }
+            try {
+                // Write datastreams and their metadata
+                for (var dv : ov.listChangedDatastreams()) {
+                    final boolean external = externalHandlingMap.containsKey(dv.getDatastreamInfo().getControlGroup());
+                    // content that needs its mime type detected is opened once, and the same stream is written
+                    final TikaInputStream detectedContent = external ? null : openForDetection(dv);
+                    unwrittenContent = detectedContent;
+                    final var mimeType = detectedContent != null ? detectMimeType(dv, detectedContent)
+                            : resolveMimeType(dv);
+                    final String dsId = dv.getDatastreamInfo().getDatastreamId();
+                    final String f6DsId = resolveF6DatastreamId(dsId, f6ObjectId);
+                    final var datastreamFilename = lastPartFromId(f6DsId);
+
+                    final var datastreamSession = datastreamSession(f6DsId, objectSession);
+                    datastreamSessions.putIfAbsent(f6DsId, datastreamSession);
+
+                    if (dv.isFirstVersionIn(ov.getObject())) {
+                        dsCreateDates.put(dsId, dv.getCreated());
+                        datastreamStates.put(f6DsId, dv.getDatastreamInfo().getState());
+                    }
 
-                final var createDate = dsCreateDates.get(dsId);
+                    final var createDate = dsCreateDates.get(dsId);
 
-                final var filename = resolveFilename(datastreamFilename,
-                        dv.getLabel(), filenameMap.get(f6DsId), mimeType);
+                    final var filename = resolveFilename(datastreamFilename,
+                            dv.getLabel(), filenameMap.get(f6DsId), mimeType);
 
-                relsDeletedFilenames.remove(f6DsId);
+                    relsDeletedFilenames.remove(f6DsId);
 
-                final var datastreamHeaders = createDatastreamHeaders(dv, f6DsId, f6ObjectId,
-                        filename, mimeType, createDate);
+                    final var datastreamHeaders = createDatastreamHeaders(dv, f6DsId, f6ObjectId,
+                            filename, mimeType, createDate);
 
-                binaryMeta.put(f6DsId, new BinaryMeta(datastreamFilename, mimeType, dv.getLabel()));
+                    binaryMeta.put(f6DsId, new BinaryMeta(datastreamFilename, mimeType, dv.getLabel()));
 
-                if (externalHandlingMap.containsKey(dv.getDatastreamInfo().getControlGroup())) {
-                    InputStream content = null;
-                    // for plain OCFL migrations, write a file containing the external/redirect URL
-                    if (migrationType == MigrationType.PLAIN_OCFL) {
-                        content = IOUtils.toInputStream(dv.getExternalOrRedirectURL(), StandardCharsets.UTF_8);
-                    }
-                    datastreamSession.writeResource(datastreamHeaders, content);
-                } else {
-                    try (var contentStream = dv.getContent()) {
-                        writeDatastreamContent(dv, datastreamHeaders, contentStream, datastreamSession);
-                    } catch (final IOException e) {
-                        throw new UncheckedIOException(e);
+                    final Runnable writeContent = () -> {
+                        if (failed.get()) {
+                            // the object failed before this write started
+                            closeContent(detectedContent, null);
+                        } else if (external) {
+                            InputStream content = null;
+                            // for plain OCFL migrations, write a file containing the external/redirect URL
+                            if (migrationType == MigrationType.PLAIN_OCFL) {
+                                content = IOUtils.toInputStream(dv.getExternalOrRedirectURL(),
+                                        StandardCharsets.UTF_8);
+                            }
+                            datastreamSession.writeResource(datastreamHeaders, content);
+                        } else {
+                            try (var contentStream = contentToWrite(dv, detectedContent)) {
+                                writeDatastreamContent(dv, datastreamHeaders, contentStream, datastreamSession);
+                            } catch (final IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    };
+
+                    if (datastreamExecutor != null) {
+                        datastreamWrites.add(datastreamExecutor.submit(writeContent));
+                        unwrittenContent = null;
+                    } else {
+                        unwrittenContent = null;
+                        writeContent.run();
                     }
-                }
 
-                if (!foxmlFile) {
-                    final var f6DescId = f6DescriptionId(f6DsId);
-                    final var descriptionHeaders = createDescriptionHeaders(f6DsId,
-                            datastreamHeaders);
-                    final var descriptionTriples = getDsTriples(dv, f6DsId, createDate);
-                    metaMap.computeIfAbsent(f6DescId, k -> new MetaHolder())
-                            .setHeaders(descriptionHeaders)
-                            .setContentTriples(descriptionTriples);
-                    toWrite.add(f6DescId);
-
-                    if (DC_DS.equals(dsId) && !disableDc) {
-                        DC dc = new DC();
-                        try {
-                            dc = DC.parseDC(dv.getContent());
-                        } catch (Exception e) {
-                            throw new RuntimeException(String.format("Failed to parse DC XML in %s/%s",
-                                objectId,f6DsId), e);
-                        }
+                    if (!foxmlFile) {
+                        final var f6DescId = f6DescriptionId(f6DsId);
+                        final var descriptionHeaders = createDescriptionHeaders(f6DsId,
+                                datastreamHeaders);
+                        final var descriptionTriples = getDsTriples(dv, f6DsId, createDate);
+                        metaMap.computeIfAbsent(f6DescId, k -> new MetaHolder())
+                                .setHeaders(descriptionHeaders)
+                                .setContentTriples(descriptionTriples);
+                        toWrite.add(f6DescId);
+
+                        if (DC_DS.equals(dsId) && !disableDc) {
+                            DC dc = new DC();
+                            try {
+                                dc = DC.parseDC(dv.getContent());
+                            } catch (Exception e) {
+                                throw new RuntimeException(String.format("Failed to parse DC XML in %s/%s",
+                                    objectId,f6DsId), e);
+                            }
 
-                        final var model = ModelFactory.createDefaultModel();
-                        for (String uri : dc.getRepresentedElementURIs()) {
-                            for (String value : dc.getValuesForURI(uri)) {
-                                final Triple dcTriple = new Triple(
-                                    NodeFactory.createURI(f6ObjectId),
-                                    NodeFactory.createURI(uri),
-                                    NodeFactory.createLiteral(value, XSDDatatype.XSDstring));
-                                final Statement statement = model.asStatement(dcTriple);
-                                model.add(statement);
-                                LOGGER.debug(dcTriple.toString());
+                            final var dcTriples = new TripleBuffer();
+                            for (String uri : dc.getRepresentedElementURIs()) {
+                                for (String value : dc.getValuesForURI(uri)) {
+                                    final Triple dcTriple = new Triple(
+                                        NodeFactory.createURI(f6ObjectId),
+                                        NodeFactory.createURI(uri),
+                                        NodeFactory.createLiteral(value, XSDDatatype.XSDstring));
+                                    dcTriples.add(dcTriple);
+                                    LOGGER.debug(dcTriple.toString());
+                                }
                             }
-                        }
 
-                        metaMap.get(f6ObjectId).setDcTriples(model);
-                        toWrite.add(f6ObjectId);
+                            metaMap.get(f6ObjectId).setDcTriples(dcTriples);
+                            toWrite.add(f6ObjectId);
 
-                    }
+                        }
 
-                    if (RELS_EXT.equals(dsId) || RELS_INT.equals(dsId)) {
-                        final var triples = parseRdfXml(dv);
-                        if (RELS_EXT.equals(dsId)) {
-                            metaMap.get(f6ObjectId).setRelsTriples(triples);
-                            toWrite.add(f6ObjectId);
-                        } else {
-                            final Map<String, Model> splitModels = splitRelsInt(triples);
-                            final var oldIds = new HashSet<>(filenameMap.keySet());
-                            filenameMap.clear();
-
-                            splitModels.forEach((id, model) -> {
-                                final var descId = f6DescriptionId(id);
-                                metaMap.computeIfAbsent(descId, k -> new MetaHolder())
-                                        .setRelsTriples(model);
-                                toWrite.add(descId);
-
-                                // Check to see if there are any file names that need updated
-                                for (final var it = model.listStatements(); it.hasNext(); ) {
-                                    final var statement = it.next();
-                                    if (DOWNLOAD_NAME_PROP.equals(statement.getPredicate().getURI())) {
-                                        filenameMap.put(id, statement.getObject().toString());
-                                        relsFilenameUpdates.add(id);
-                                        break;
+                        if (RELS_EXT.equals(dsId) || RELS_INT.equals(dsId)) {
+                            final var triples = parseRdfXml(dv);
+                            if (RELS_EXT.equals(dsId)) {
+                                metaMap.get(f6ObjectId).setRelsTriples(triples);
+                                toWrite.add(f6ObjectId);
+                            } else {
+                                final Map<String, TripleBuffer> splitTriples = splitRelsInt(triples);
+                                final var oldIds = new HashSet<>(filenameMap.keySet());
+                                filenameMap.clear();
+
+                                splitTriples.forEach((id, dsTriples) -> {
+                                    final var descId = f6DescriptionId(id);
+                                    metaMap.computeIfAbsent(descId, k -> new MetaHolder())
+                                            .setRelsTriples(dsTriples);
+                                    toWrite.add(descId);
+
+                                    // Check to see if there are any file names that need updated
+                                    for (final var triple : dsTriples) {
+                                        if (DOWNLOAD_NAME_PROP.equals(triple.getPredicate().getURI())) {
+                                            filenameMap.put(id, nodeToString(triple.getObject()));
+                                            relsFilenameUpdates.add(id);
+                                            break;
+                                        }
                                     }
-                                }
-                            });
-
-                            // The filename was set once but is no longer
-                            final var deleted = Sets.difference(oldIds, filenameMap.keySet());
-                            deleted.forEach(id -> {
-                                final var meta = binaryMeta.get(id);
-                                if (meta != null) {
-                                    relsDeletedFilenames.put(id, resolveFilename(meta.name, meta.label,
-                                            null, meta.mimeType));
-                                }
-                            });
+                                });
+
+                                // The filename was set once but is no longer
+                                final var deleted = Sets.difference(oldIds, filenameMap.keySet());
+                                deleted.forEach(id -> {
+                                    final var meta = binaryMeta.get(id);
+                                    if (meta != null) {
+                                        relsDeletedFilenames.put(id, resolveFilename(meta.name, meta.label,
+                                                null, meta.mimeType));
+                                    }
+                                });
+                            }
                         }
                     }
                 }
+
+                // The descriptions and filenames are written to the same datastream sessions, so the content must be
+                // staged first.
+                awaitAll(datastreamWrites);
+            } catch (final RuntimeException | Error e) {
+                // A failure on this thread, or of any datastream, fails the whole object. The writes that have not
+                // started are skipped, and the sessions are aborted once none are being written to.
+                failed.set(true);
+                closeContent(unwrittenContent, e);
+                awaitQuietly(datastreamWrites);
+                objectSession.abort();
+                datastreamSessions.values().forEach(OcflObjectSession::abort);
+                throw e;
             }
 
             writeMeta(toWrite, metaMap, objectSession, datastreamSessions);
@@ -384,11 +470,7 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
                 objectSession.commit();
 
                 if (resourceMigrationType == ResourceMigrationType.ATOMIC) {
-                    datastreamSessions.forEach((id, session) -> {
-                        LOGGER.debug("Committing object <{}>", id);
-                        session.versionCreationTimestamp(creationTimestamp);
-                        session.commit();
-                    });
+                    commitDatastreamSessions(datastreamSessions, creationTimestamp);
                 }
             }
         }
@@ -506,6 +588,104 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
         }
     }
 
+    /**
+     * Commits the sessions of atomic datastreams. The sessions are independent OCFL objects, so they are committed
+     * concurrently when a datastream executor is configured.
+     *
+     * @param datastreamSessions the ocfl sessions for the datastreams
+     * @param creationTimestamp the timestamp of the new versions
+     */
+    private void commitDatastreamSessions(final Map<String, OcflObjectSession> datastreamSessions,
+                                          final OffsetDateTime creationTimestamp) {
+        final var commits = new ArrayList<Future<?>>();
+        datastreamSessions.forEach((id, session) -> {
+            final Runnable commit = () -> {
+                LOGGER.debug("Committing object <{}>", id);
+                session.versionCreationTimestamp(creationTimestamp);
+                session.commit();
+            };
+            if (datastreamExecutor != null) {
+                commits.add(datastreamExecutor.submit(commit));
+            } else {
+                commit.run();
+            }
+        });
+        awaitAll(commits);
+    }
+
+    /**
+     * Waits for all of the tasks to complete, and then rethrows the first failure, if any.
+     *
+     * @param futures the submitted tasks
+     */
+    private static void awaitAll(final List<Future<?>> futures) {
+        RuntimeException failure = null;
+        for (final var future : futures) {
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                final var cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                final var exception = cause instanceof RuntimeException ?
+                        (RuntimeException) cause : new RuntimeException(cause);
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Interrupted while migrating datastreams", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits for all of the tasks to complete, ignoring their failures, as the object has already failed.
+     *
+     * @param futures the submitted tasks
+     */
+    private static void awaitQuietly(final List<Future<?>> futures) {
+        for (final var future : futures) {
+            try {
+                future.get();
+            } catch (final ExecutionException e) {
+                LOGGER.debug("Datastream write failed after the object failed", e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes content that will not be written.
+     *
+     * @param content the content, or null
+     * @param failure the failure the content is abandoned for, which a failure to close is added to, or null
+     */
+    private static void closeContent(final InputStream content, final Throwable failure) {
+        if (content == null) {
+            return;
+        }
+        try {
+            content.close();
+        } catch (final IOException e) {
+            if (failure != null) {
+                failure.addSuppressed(e);
+            } else {
+                LOGGER.warn("Unable to close datastream content: {}", e.getMessage());
+            }
+        }
+    }
+
     private boolean fedora3DigestValid(final ContentDigest f3Digest) {
         return f3Digest != null && StringUtils.isNotBlank(f3Digest.getType()) &&
                 StringUtils.isNotBlank(f3Digest.getDigest());
@@ -523,21 +703,21 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
         final var ocflObjectId = session.ocflObjectId();
         final var datastreamId = dv.getDatastreamInfo().getDatastreamId();
         final var datastreamControlGroup = dv.getDatastreamInfo().getControlGroup();
-        if (fedora3DigestValid(f3Digest)) {
+        if (fedora3DigestValid(f3Digest) && migrationType == MigrationType.PLAIN_OCFL) {
+            // the session validates the digest in the headers as it stages the content, and warns of an unknown
+            // algorithm
+            session.writeResource(datastreamHeaders, contentStream);
+        } else if (fedora3DigestValid(f3Digest)) {
             try {
-                final var messageDigest = MessageDigest.getInstance(f3Digest.getType());
-                if (migrationType == MigrationType.PLAIN_OCFL) {
-                    session.writeResource(datastreamHeaders, contentStream);
-                } else {
-                    try (var digestStream = new DigestInputStream(contentStream, messageDigest)) {
-                        session.writeResource(datastreamHeaders, digestStream);
-                        final var expectedDigest = f3Digest.getDigest();
-                        final var actualDigest = Bytes.wrap(digestStream.getMessageDigest().digest()).encodeHex();
-                        if (!actualDigest.equalsIgnoreCase(expectedDigest)) {
-                            final var msg = String.format("%s/%s: digest %s doesn't match expected digest %s",
-                                    ocflObjectId, datastreamId, actualDigest, expectedDigest);
-                            throw new RuntimeException(msg);
-                        }
+                final var messageDigest = hashingEngine.newDigest(f3Digest.getType());
+                try (var digestStream = new DigestInputStream(contentStream, messageDigest)) {
+                    session.writeResource(datastreamHeaders, digestStream);
+                    final var expectedDigest = f3Digest.getDigest();
+                    final var actualDigest = Bytes.wrap(digestStream.getMessageDigest().digest()).encodeHex();
+                    if (!actualDigest.equalsIgnoreCase(expectedDigest)) {
+                        final var msg = String.format("%s/%s: digest %s doesn't match expected digest %s",
+                                ocflObjectId, datastreamId, actualDigest, expectedDigest);
+                        throw new RuntimeException(msg);
                     }
                 }
             } catch (final NoSuchAlgorithmException e) {
@@ -597,10 +777,7 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
                 session.commit();
 
                 if (resourceMigrationType == ResourceMigrationType.ATOMIC) {
-                    datastreamSessions.forEach((id, dsSession) -> {
-                        dsSession.versionCreationTimestamp(now);
-                        dsSession.commit();
-                    });
+                    commitDatastreamSessions(datastreamSessions, now);
                 }
             } else if (!headOnly) {
                 session.abort();
@@ -735,10 +912,11 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
         String mime = dv.getMimeType();
 
         if (Strings.isNullOrEmpty(mime)) {
-            final var meta = new Metadata();
-            meta.set(Metadata.RESOURCE_NAME_KEY, dv.getDatastreamInfo().getDatastreamId());
-            try (var content = TikaInputStream.get(dv.getContent())) {
-                mime = mimeDetector.detect(content, meta).toString();
+            mime = mimeDetector.cached(dv.getDatastreamInfo().getDatastreamId(), dv.getFormatUri());
+        }
+        if (Strings.isNullOrEmpty(mime)) {
+            try (var content = MimeTypeDetector.markable(dv.getContent())) {
+                mime = mimeDetector.detect(dv.getDatastreamInfo().getDatastreamId(), dv.getFormatUri(), content);
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
@@ -747,6 +925,54 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
         return mime;
     }
 
+    /**
+     * @return the content of the datastream version, ready for detection, if its mime type has to be detected;
+     *         otherwise null
+     */
+    private TikaInputStream openForDetection(final DatastreamVersion dv) {
+        if (!Strings.isNullOrEmpty(dv.getMimeType())
+                || mimeDetector.cached(dv.getDatastreamInfo().getDatastreamId(), dv.getFormatUri()) != null) {
+            return null;
+        }
+        try {
+            final var file = dv.getFile();
+            return file.isPresent() ? MimeTypeDetector.markable(file.get().toPath())
+                    : MimeTypeDetector.markable(dv.getContent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the content of the datastream version to write, which the session may stage from the file that holds
+     *         it, if there is one
+     */
+    private static InputStream contentToWrite(final DatastreamVersion dv, final InputStream detectedContent)
+            throws IOException {
+        final var file = dv.getFile();
+        if (file.isPresent()) {
+            return new SourceFileInputStream(file.get().toPath(), detectedContent);
+        }
+        return detectedContent != null ? detectedContent : dv.getContent();
+    }
+
+    /**
+     * Detects the mime type of a datastream version from the start of its content, which is rewound to be written.
+     * The content is closed if detection fails.
+     */
+    private String detectMimeType(final DatastreamVersion dv, final TikaInputStream content) {
+        try {
+            return mimeDetector.detect(dv.getDatastreamInfo().getDatastreamId(), dv.getFormatUri(), content);
+        } catch (final IOException e) {
+            final var failure = new UncheckedIOException(e);
+            closeContent(content, failure);
+            throw failure;
+        } catch (final RuntimeException e) {
+            closeContent(content, e);
+            throw e;
+        }
+    }
+
     private void deleteDatastream(final String id,
                                   final Instant lastModified,
                                   final OcflObjectSession session) {
@@ -791,15 +1017,15 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
     }
 
     // Get object-level triples
-    private static Model getObjTriples(final ObjectVersionReference o, final String pid) {
-        final Model triples = ModelFactory.createDefaultModel();
+    private static TripleBuffer getObjTriples(final ObjectVersionReference o, final String pid) {
+        final TripleBuffer triples = new TripleBuffer();
         final String uri = "info:fedora/" + pid;
 
         o.getObjectProperties().listProperties().forEach(p -> {
             if (p.getName().contains("Date")) {
-                addDateLiteral(triples, uri, p.getName(), p.getValue());
+                triples.addDateLiteral(uri, p.getName(), p.getValue());
             } else {
-                addStringLiteral(triples, uri, p.getName(), p.getValue());
+                triples.addStringLiteral(uri, p.getName(), p.getValue());
             }
         });
 
@@ -807,36 +1033,36 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
     }
 
     // Get datastream-level triples
-    private Model getDsTriples(final DatastreamVersion dv,
-                                            final String f6DsId,
-                                            final String createDate) {
-        final Model triples = ModelFactory.createDefaultModel();
+    private TripleBuffer getDsTriples(final DatastreamVersion dv,
+                                      final String f6DsId,
+                                      final String createDate) {
+        final TripleBuffer triples = new TripleBuffer();
 
         if (migrationType == MigrationType.PLAIN_OCFL) {
             // These triples are server managed in F6
-            addDateLiteral(triples,
+            triples.addDateLiteral(
                     f6DsId,
                     "http://fedora.info/definitions/v4/repository#created",
                     createDate);
-            addDateLiteral(triples,
+            triples.addDateLiteral(
                     f6DsId,
                     "http://fedora.info/definitions/v4/repository#lastModified",
                     dv.getCreated());
-            addStringLiteral(triples,
+            triples.addStringLiteral(
                     f6DsId,
                     "http://purl.org/dc/terms/identifier",
                     dv.getDatastreamInfo().getDatastreamId());
-            addStringLiteral(triples,
+            triples.addStringLiteral(
                     f6DsId,
                     "http://www.ebu.ch/metadata/ontologies/ebucore/ebucore#hasMimeType",
                     dv.getMimeType());
-            addLongLiteral(triples,
+            triples.addLongLiteral(
                     f6DsId,
                     "http://www.loc.gov/premis/rdf/v1#size",
                     dv.getSize());
 
             if (dv.getContentDigest() != null) {
-                addStringLiteral(triples,
+                triples.addStringLiteral(
                         f6DsId,
                         "http://www.loc.gov/premis/rdf/v1#hasMessageDigest",
                         "urn:" + dv.getContentDigest().getType().toLowerCase() + ":" +
@@ -844,15 +1070,15 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
             }
         }
 
-        addStringLiteral(triples,
+        triples.addStringLiteral(
                 f6DsId,
                 "http://purl.org/dc/terms/title",
                 dv.getLabel());
-        addStringLiteral(triples,
+        triples.addStringLiteral(
                 f6DsId,
                 "http://fedora.info/definitions/1/0/access/objState",
                 dv.getDatastreamInfo().getState());
-        addStringLiteral(triples,
+        triples.addStringLiteral(
                 f6DsId,
                 "http://www.loc.gov/premis/rdf/v1#formatDesignation",
                 dv.getFormatUri());
@@ -860,37 +1086,6 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
         return triples;
     }
 
-    private static void addStringLiteral(final Model m,
-                                         final String s,
-                                         final String p,
-                                         final String o) {
-        if (o != null) {
-            m.add(m.createResource(s), m.createProperty(p), o);
-        }
-    }
-
-    private static void addDateLiteral(final Model m,
-                                       final String s,
-                                       final String p,
-                                       final String date) {
-        if (date != null) {
-            m.addLiteral(m.createResource(s),
-                         m.createProperty(p),
-                         m.createTypedLiteral(date, XSDDatatype.XSDdateTime));
-        }
-    }
-
-    private static void addLongLiteral(final Model m,
-                                       final String s,
-                                       final String p,
-                                       final long number) {
-        if (number != -1) {
-            m.addLiteral(m.createResource(s),
-                    m.createProperty(p),
-                    m.createTypedLiteral(number, XSDDatatype.XSDlong));
-        }
-    }
-
     /**
      * @param mime any mimetype as String
      * @return extension associated with arg mime, return includes '.' in extension (.txt).
@@ -913,11 +1108,9 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
         return "";
     }
 
-    private Model parseRdfXml(final DatastreamVersion datastreamVersion) {
-        final var model = ModelFactory.createDefaultModel();
+    private TripleBuffer parseRdfXml(final DatastreamVersion datastreamVersion) {
         try (final var is = datastreamVersion.getContent()) {
-            RDFDataMgr.read(model, is, Lang.RDFXML);
-            return model;
+            return TripleBuffer.parse(is, Lang.RDFXML);
         } catch (Exception e) {
             throw new RuntimeException(String.format("Failed to parse RDF XML in %s/%s",
                     datastreamVersion.getDatastreamInfo().getObjectInfo().getPid(),
@@ -925,15 +1118,24 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
         }
     }
 
-    private Map<String, Model> splitRelsInt(final Model relsIntModel) {
-        final Map<String, Model> splitModels = new HashMap<>();
-        for (final var it = relsIntModel.listStatements(); it.hasNext();) {
-            final var statement = it.next();
-            final var id = statement.getSubject().getURI();
-            final var model = splitModels.computeIfAbsent(id, k -> ModelFactory.createDefaultModel());
-            model.add(statement);
+    private Map<String, TripleBuffer> splitRelsInt(final TripleBuffer relsIntTriples) {
+        final Map<String, TripleBuffer> splitTriples = new HashMap<>();
+        for (final var triple : relsIntTriples) {
+            final var subject = triple.getSubject();
+            final var id = subject.isURI() ? subject.getURI() : null;
+            splitTriples.computeIfAbsent(id, k -> new TripleBuffer()).add(triple);
+        }
+        return splitTriples;
+    }
+
+    /**
+     * @return the lexical form of a literal, or the URI of a resource
+     */
+    private static String nodeToString(final Node node) {
+        if (node.isLiteral()) {
+            return node.getLiteralLexicalForm();
         }
-        return splitModels;
+        return node.isURI() ? node.getURI() : node.toString();
     }
 
     /**
@@ -963,21 +1165,22 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
      * independently and we need to be able to construct the correct set of triples when one changes.
      */
     private static class MetaHolder {
-        Model contentTriples;
-        Model relsTriples;
-        Model dcTriples;
+        TripleBuffer contentTriples;
+        TripleBuffer relsTriples;
+        TripleBuffer dcTriples;
         ResourceHeaders.Builder headers;
 
-        public static MetaHolder fromContent(final Model contentTriples, final ResourceHeaders.Builder headers) {
+        public static MetaHolder fromContent(final TripleBuffer contentTriples,
+                                             final ResourceHeaders.Builder headers) {
             return new MetaHolder(contentTriples, null, headers);
         }
 
         private MetaHolder() {
         }
 
-        private MetaHolder(final Model contentTriples,
-                           final Model relsTriples,
-                           final Model dcTriples,
+        private MetaHolder(final TripleBuffer contentTriples,
+                           final TripleBuffer relsTriples,
+                           final TripleBuffer dcTriples,
                            final ResourceHeaders.Builder headers) {
             this.contentTriples = contentTriples;
             this.relsTriples = relsTriples;
@@ -985,8 +1188,8 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
             this.headers = headers;
         }
 
-        private MetaHolder(final Model contentTriples,
-                           final Model relsTriples,
+        private MetaHolder(final TripleBuffer contentTriples,
+                           final TripleBuffer relsTriples,
                            final ResourceHeaders.Builder headers) {
             this.contentTriples = contentTriples;
             this.relsTriples = relsTriples;
@@ -1000,23 +1203,7 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
          * @return n-triples input stream
          */
         public InputStream constructTriples() {
-            final var output = new ByteArrayOutputStream();
-            final var triples = ModelFactory.createDefaultModel();
-
-            if (contentTriples != null) {
-                triples.add(contentTriples.listStatements());
-            }
-
-            if (relsTriples != null) {
-                triples.add(relsTriples.listStatements());
-            }
-
-            if (dcTriples != null) {
-                triples.add(dcTriples.listStatements());
-            }
-
-            triples.write(output, Lang.NTRIPLES.getName());
-            return new ByteArrayInputStream(output.toByteArray());
+            return TripleBuffer.toNTriples(contentTriples, relsTriples, dcTriples);
         }
 
         public MetaHolder setHeaders(final ResourceHeaders.Builder headers) {
@@ -1024,16 +1211,16 @@ public class ArchiveGroupHandler implements FedoraObjectVersionHandler {
             return this;
         }
 
-        public MetaHolder setContentTriples(final Model contentTriples) {
+        public MetaHolder setContentTriples(final TripleBuffer contentTriples) {
             this.contentTriples = contentTriples;
             return this;
         }
 
-        public MetaHolder setRelsTriples(final Model relsTriples) {
+        public MetaHolder setRelsTriples(final TripleBuffer relsTriples) {
             this.relsTriples = relsTriples;
             return this;
         }
-        public MetaHolder setDcTriples(final Model dcTriples) {
+        public MetaHolder setDcTriples(final TripleBuffer dcTriples) {
             this.dcTriples = dcTriples;
             return this;
         }
@@ -37,6 +37,15 @@ public class CountingInputStream extends InputStream {
         this.inner = inner;
     }
 
+    /**
+     * Counts bytes that were processed without being read from a stream.
+     *
+     * @param bytes the number of bytes
+     */
+    static void processed(final long bytes) {
+        byteCounter.increment(bytes);
+    }
+
     @Override
     public int read() throws IOException {
         final var result = inner.read();
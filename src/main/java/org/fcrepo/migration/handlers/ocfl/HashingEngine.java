@@ -0,0 +1,241 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+/**
+ * Creates the message digests that datastream content is hashed with, and hashes staged files.
+ * <p>
+ * The first time an algorithm is used, each installed JCA provider that implements it is timed on a sample of content
+ * and the fastest is used from then on, unless a provider is named. This picks up a native provider installed in the
+ * JVM's security configuration, and otherwise the JDK provider, whose SHA implementations use CPU intrinsics where the
+ * JVM supports them. A file at least as large as the pipeline threshold is read on the calling thread into one of two
+ * buffers while the other is hashed, with each digest hashed on its own thread.
+ * </p>
+ */
+public class HashingEngine {
+
+    private static final Logger LOGGER = getLogger(HashingEngine.class);
+
+    /**
+     * The default size of the files whose reading and hashing are pipelined: 64 MB, or no files when the JVM has a
+     * single processor to read and hash on.
+     */
+    public static final long DEFAULT_PIPELINE_THRESHOLD =
+            Runtime.getRuntime().availableProcessors() > 1 ? 1L << 26 : Long.MAX_VALUE;
+
+    /**
+     * The default size of each of the two buffers of a pipelined file: 4 MB.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 22;
+
+    // the content each provider is timed on, after it has been warmed up on the same amount
+    private static final int SAMPLE_SIZE = 1 << 20;
+    private static final int SAMPLE_ROUNDS = 16;
+
+    private static final HashingEngine DEFAULT = new HashingEngine(null, DEFAULT_PIPELINE_THRESHOLD,
+            DEFAULT_BUFFER_SIZE);
+
+    private final String providerName;
+    private final long pipelineThreshold;
+    private final int bufferSize;
+
+    // the provider used for each algorithm, by upper case algorithm name
+    private final Map<String, Provider> providers = new ConcurrentHashMap<>();
+
+    private final ExecutorService hashers;
+
+    /**
+     * @param providerName the name of the JCA provider to use for the algorithms it implements, or null to use the
+     *                     fastest installed provider
+     * @param pipelineThreshold the size of the files whose reading and hashing are pipelined, in bytes
+     * @param bufferSize the size of each of the two buffers of a pipelined file, in bytes
+     */
+    public HashingEngine(final String providerName, final long pipelineThreshold, final int bufferSize) {
+        if (providerName != null && Security.getProvider(providerName) == null) {
+            throw new IllegalArgumentException("No security provider named " + providerName + " is installed");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("The hashing buffer size must be positive: " + bufferSize);
+        }
+        this.providerName = providerName;
+        this.pipelineThreshold = pipelineThreshold;
+        this.bufferSize = bufferSize;
+        final AtomicInteger count = new AtomicInteger();
+        this.hashers = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "hasher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the engine used when none is configured, which uses the fastest installed providers
+     */
+    public static HashingEngine getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param algorithm the JCA name of a digest algorithm
+     * @return a new digest of the algorithm, from the provider selected for it
+     * @throws NoSuchAlgorithmException if no provider implements the algorithm
+     */
+    public MessageDigest newDigest(final String algorithm) throws NoSuchAlgorithmException {
+        final String key = algorithm.toUpperCase(Locale.ROOT);
+        Provider provider = providers.get(key);
+        if (provider == null) {
+            // selected at most a few times per algorithm, by threads that race to use it first
+            provider = select(algorithm);
+            providers.putIfAbsent(key, provider);
+        }
+        return MessageDigest.getInstance(algorithm, provider);
+    }
+
+    /**
+     * Computes several digests of a file in one pass.
+     *
+     * @param file the file
+     * @param digests the digests to update, by name
+     * @return the hex encoded digests of the file, by name
+     * @throws IOException IO exception
+     */
+    Map<String, String> digestFile(final Path file, final Map<String, MessageDigest> digests) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < pipelineThreshold) {
+                return MultiDigestInputStream.digestFile(channel, digests);
+            }
+            pipeline(channel, digests);
+        }
+        return MultiDigestInputStream.encode(digests);
+    }
+
+    /**
+     * Reads the channel into one buffer while the other is hashed, until the end of the channel.
+     */
+    private void pipeline(final FileChannel channel, final Map<String, MessageDigest> digests) throws IOException {
+        final ByteBuffer[] buffers = {ByteBuffer.allocateDirect(bufferSize), ByteBuffer.allocateDirect(bufferSize)};
+        int current = 0;
+        fill(channel, buffers[current]);
+        while (buffers[current].flip().hasRemaining()) {
+            final ByteBuffer full = buffers[current];
+            final List<Future<?>> hashing = new ArrayList<>(digests.size());
+            for (final MessageDigest digest : digests.values()) {
+                hashing.add(hashers.submit(() -> digest.update(full.duplicate())));
+            }
+            current = 1 - current;
+            buffers[current].clear();
+            try {
+                fill(channel, buffers[current]);
+            } finally {
+                // the hashed buffer is filled next
+                await(hashing);
+            }
+        }
+    }
+
+    private static void fill(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // read until the buffer is full or the channel ends
+        }
+    }
+
+    private static void await(final List<Future<?>> hashing) throws IOException {
+        for (final Future<?> future : hashing) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                hashing.forEach(f -> f.cancel(true));
+                throw new InterruptedIOException("Interrupted while hashing");
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException("Unable to hash the content", e.getCause());
+            }
+        }
+    }
+
+    private Provider select(final String algorithm) throws NoSuchAlgorithmException {
+        if (providerName != null) {
+            final Provider provider = Security.getProvider(providerName);
+            if (provider.getService("MessageDigest", algorithm) != null) {
+                return provider;
+            }
+            LOGGER.warn("Security provider {} does not implement {}, using the fastest provider that does",
+                    providerName, algorithm);
+        }
+        final List<Provider> candidates = new ArrayList<>();
+        for (final Provider provider : Security.getProviders()) {
+            if (provider.getService("MessageDigest", algorithm) != null) {
+                candidates.add(provider);
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new NoSuchAlgorithmException(algorithm + " MessageDigest not available");
+        }
+        if (candidates.size() == 1) {
+            LOGGER.debug("Hashing {} with {}", algorithm, candidates.get(0).getName());
+            return candidates.get(0);
+        }
+
+        final byte[] sample = new byte[SAMPLE_SIZE];
+        Provider fastest = null;
+        long fastestTime = Long.MAX_VALUE;
+        for (final Provider provider : candidates) {
+            final long time = time(MessageDigest.getInstance(algorithm, provider), sample);
+            LOGGER.debug("{} hashed {} bytes of {} in {} ns", provider.getName(), SAMPLE_SIZE * SAMPLE_ROUNDS,
+                    algorithm, time);
+            if (time < fastestTime) {
+                fastest = provider;
+                fastestTime = time;
+            }
+        }
+        LOGGER.info("Hashing {} with {}, the fastest of {} providers", algorithm, fastest.getName(),
+                candidates.size());
+        return fastest;
+    }
+
+    private static long time(final MessageDigest digest, final byte[] sample) {
+        for (int i = 0; i < SAMPLE_ROUNDS; i++) {
+            digest.update(sample);
+        }
+        digest.reset();
+        final long start = System.nanoTime();
+        for (int i = 0; i < SAMPLE_ROUNDS; i++) {
+            digest.update(sample);
+        }
+        digest.digest();
+        return System.nanoTime() - start;
+    }
+
+}
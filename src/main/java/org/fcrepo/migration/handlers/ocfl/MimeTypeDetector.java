@@ -0,0 +1,141 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+
+/**
+ * Detects the mime types of datastreams that have none, with a Tika detector shared by all the handlers of a
+ * migration.
+ * <p>
+ * Detection reads the content from a TikaInputStream and rewinds it, so that the same stream can then be written.
+ * Most types are detected from a prefix of the content, which is buffered. Container formats, such as OOXML and OLE2
+ * documents, can only be told apart by detectors that read the whole content from a file, so content that starts like
+ * a zip or OLE2 file, and is not already in a file, is spooled to a temporary file before it is detected. Datastreams that declare a format URI are assumed to have the same mime type as
+ * other datastreams with the same id and format URI, so each such pair is only detected once.
+ * </p>
+ */
+class MimeTypeDetector {
+
+    /**
+     * The size of the prefix of the content that detection may read, which is buffered to rewind the content.
+     */
+    static final int PREFIX_SIZE = 1 << 16;
+
+    private static final byte[] ZIP_SIGNATURE = {'P', 'K', 3, 4};
+
+    private static final byte[] OLE2_SIGNATURE = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0};
+
+    // bounds the cache for migrations with unusually many distinct pairs
+    private static final int MAX_CACHED = 10000;
+
+    private static final MimeTypeDetector INSTANCE = new MimeTypeDetector();
+
+    private final Detector detector;
+
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    private MimeTypeDetector() {
+        try {
+            this.detector = new TikaConfig().getDetector();
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the detector shared by all handlers
+     */
+    static MimeTypeDetector getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param content a content stream
+     * @return the stream, as a TikaInputStream that can be detected
+     */
+    static TikaInputStream markable(final InputStream content) {
+        return TikaInputStream.get(content);
+    }
+
+    /**
+     * @param file a file holding the content
+     * @return a TikaInputStream of the file, which can be detected without spooling the content
+     * @throws IOException IO exception opening the file
+     */
+    static TikaInputStream markable(final Path file) throws IOException {
+        return TikaInputStream.get(file);
+    }
+
+    /**
+     * @param datastreamId the id of the datastream
+     * @param formatUri the format URI of the datastream version
+     * @return the mime type detected for an earlier datastream with the same id and format URI, or null
+     */
+    String cached(final String datastreamId, final String formatUri) {
+        return StringUtils.isBlank(formatUri) ? null : cache.get(cacheKey(datastreamId, formatUri));
+    }
+
+    /**
+     * Detects the mime type of a datastream, leaving the stream at the position it started from.
+     * @param datastreamId the id of the datastream
+     * @param formatUri the format URI of the datastream version, or null
+     * @param content the content, at its start
+     * @return the mime type
+     * @throws IOException IO exception reading the content
+     */
+    String detect(final String datastreamId, final String formatUri, final TikaInputStream content)
+            throws IOException {
+        final var meta = new Metadata();
+        meta.set(Metadata.RESOURCE_NAME_KEY, datastreamId);
+        if (!content.hasFile() && isContainer(content)) {
+            // spooled before the stream is marked, since a stream that a detector spools can no longer be reset
+            content.getPath();
+        }
+        content.mark(PREFIX_SIZE);
+        final String mimeType;
+        try {
+            mimeType = detector.detect(content, meta).toString();
+        } finally {
+            content.reset();
+        }
+        if (StringUtils.isNotBlank(formatUri) && cache.size() < MAX_CACHED) {
+            cache.putIfAbsent(cacheKey(datastreamId, formatUri), mimeType);
+        }
+        return mimeType;
+    }
+
+    private static boolean isContainer(final InputStream content) throws IOException {
+        final byte[] signature = new byte[ZIP_SIGNATURE.length];
+        content.mark(signature.length);
+        final int read;
+        try {
+            read = IOUtils.read(content, signature);
+        } finally {
+            content.reset();
+        }
+        return read == signature.length && (Arrays.equals(signature, ZIP_SIGNATURE)
+                || Arrays.equals(signature, OLE2_SIGNATURE));
+    }
+
+    private static String cacheKey(final String datastreamId, final String formatUri) {
+        return datastreamId + ' ' + formatUri;
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * An InputStream that computes several digests of the content read through it, so that each algorithm a write needs
+ * is computed in the same pass over the content.
+ */
+class MultiDigestInputStream extends FilterInputStream {
+
+    // the size of the regions of a file that are mapped at a time
+    private static final long MAP_SIZE = 1L << 26;
+
+    private final Map<String, MessageDigest> digests;
+
+    /**
+     * @param content the content
+     * @param digests the digests to update, by name
+     */
+    MultiDigestInputStream(final InputStream content, final Map<String, MessageDigest> digests) {
+        super(content);
+        this.digests = digests;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0) {
+            for (final MessageDigest digest : digests.values()) {
+                digest.update((byte) b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = super.read(b, off, len);
+        if (n > 0) {
+            for (final MessageDigest digest : digests.values()) {
+                digest.update(b, off, n);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // skipped content would be missing from the digests
+        final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return the hex encoded digests of the content read, by name
+     */
+    Map<String, String> hexDigests() {
+        return encode(digests);
+    }
+
+    /**
+     * Computes several digests of a file in one pass, reading it through memory mapped regions.
+     *
+     * @param file the file
+     * @param digests the digests to update, by name
+     * @return the hex encoded digests of the file, by name
+     * @throws IOException IO exception
+     */
+    static Map<String, String> digestFile(final Path file, final Map<String, MessageDigest> digests)
+            throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return digestFile(channel, digests);
+        }
+    }
+
+    /**
+     * Computes several digests of the content of a file channel in one pass, reading it through memory mapped
+     * regions.
+     *
+     * @param channel the channel
+     * @param digests the digests to update, by name
+     * @return the hex encoded digests of the content, by name
+     * @throws IOException IO exception
+     */
+    static Map<String, String> digestFile(final FileChannel channel, final Map<String, MessageDigest> digests)
+            throws IOException {
+        final long size = channel.size();
+        for (long position = 0; position < size; position += MAP_SIZE) {
+            final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAP_SIZE, size - position));
+            for (final MessageDigest digest : digests.values()) {
+                digest.update(region.duplicate());
+            }
+        }
+        return encode(digests);
+    }
+
+    /**
+     * @param digests digests, by name
+     * @return the hex encoded digests, by name
+     */
+    static Map<String, String> encode(final Map<String, MessageDigest> digests) {
+        final Map<String, String> encoded = new HashMap<>();
+        digests.forEach((name, digest) -> encoded.put(name, Hex.encodeHexString(digest.digest())));
+        return encoded;
+    }
+}
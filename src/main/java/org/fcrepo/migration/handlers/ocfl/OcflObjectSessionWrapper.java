@@ -15,7 +15,10 @@
  */
 package org.fcrepo.migration.handlers.ocfl;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.stream.Stream;
@@ -66,6 +69,16 @@ public class OcflObjectSessionWrapper implements OcflObjectSession {
 
     @Override
     public ResourceHeaders writeResource(final ResourceHeaders headers, final InputStream content) {
+        // content stored in a file is passed down as it is, so that the session can stage the file itself
+        if (content instanceof SourceFileInputStream) {
+            final var file = ((SourceFileInputStream) content).getFile();
+            try {
+                CountingInputStream.processed(Files.size(file));
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return writeTimer.record(() -> inner.writeResource(headers, content));
+        }
         // The ocfl write further down expects content to be nullable, so if it is null just continue to pass it down
         final var countingStream = content != null ? new CountingInputStream(content) : null;
         return writeTimer.record(() -> inner.writeResource(headers, countingStream));
@@ -19,7 +19,6 @@ package org.fcrepo.migration.handlers.ocfl;
 import io.ocfl.api.MutableOcflRepository;
 import io.ocfl.api.OcflObjectUpdater;
 import io.ocfl.api.OcflOption;
-import io.ocfl.api.exception.OcflInputException;
 import io.ocfl.api.model.DigestAlgorithm;
 import io.ocfl.api.model.ObjectVersionId;
 import io.ocfl.api.model.VersionInfo;
@@ -32,21 +31,28 @@ import org.fcrepo.storage.ocfl.OcflVersionInfo;
 import org.fcrepo.storage.ocfl.PersistencePaths;
 import org.fcrepo.storage.ocfl.ResourceContent;
 import org.fcrepo.storage.ocfl.ResourceHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -59,15 +65,24 @@ import java.util.stream.Stream;
  */
 public class PlainOcflObjectSession implements OcflObjectSession {
 
+    private static final Logger LOG = LoggerFactory.getLogger(PlainOcflObjectSession.class);
+
+    // the name of the OCFL digest among the digests computed for a staged file, which cannot be a Fedora 3 type
+    private static final String OCFL_DIGEST = "ocfl:";
+
     private final MutableOcflRepository ocflRepo;
     private final String sessionId;
     private final String ocflObjectId;
     private final VersionInfo versionInfo;
     private final Path objectStaging;
     private final boolean disableChecksumValidation;
+    private final StagingMode stagingMode;
+    private final DigestAlgorithm digestAlgorithm;
+    private final HashingEngine hashingEngine;
 
     private final OcflOption[] ocflOptions;
     private final HashMap<String, HashMap<String, String>> digests;
+    private final HashMap<String, StagedFile> stagedFiles;
     private final Set<String> deletePaths;
 
     private boolean closed = false;
@@ -84,15 +99,64 @@ public class PlainOcflObjectSession implements OcflObjectSession {
                                   final String ocflObjectId,
                                   final Path objectStaging,
                                   final boolean disableChecksumValidation) {
+        this(sessionId, ocflRepo, ocflObjectId, objectStaging, disableChecksumValidation, StagingMode.STREAM, null);
+    }
+
+    /**
+     * @param sessionId the session's id
+     * @param ocflRepo the OCFL client
+     * @param ocflObjectId the OCFL object id
+     * @param objectStaging the object's staging directory
+     * @param disableChecksumValidation whether to verify fedora3 checksums or not
+     * @param stagingMode how content stored in a file is staged
+     * @param digestAlgorithm the digest algorithm of the OCFL repository, which is computed as content is staged
+     *                        so that the OCFL client does not read the staged files again, or null to leave the
+     *                        digests to the OCFL client
+     */
+    public PlainOcflObjectSession(final String sessionId,
+                                  final MutableOcflRepository ocflRepo,
+                                  final String ocflObjectId,
+                                  final Path objectStaging,
+                                  final boolean disableChecksumValidation,
+                                  final StagingMode stagingMode,
+                                  final DigestAlgorithm digestAlgorithm) {
+        this(sessionId, ocflRepo, ocflObjectId, objectStaging, disableChecksumValidation, stagingMode, digestAlgorithm,
+                HashingEngine.getDefault());
+    }
+
+    /**
+     * @param sessionId the session's id
+     * @param ocflRepo the OCFL client
+     * @param ocflObjectId the OCFL object id
+     * @param objectStaging the object's staging directory
+     * @param disableChecksumValidation whether to verify fedora3 checksums or not
+     * @param stagingMode how content stored in a file is staged
+     * @param digestAlgorithm the digest algorithm of the OCFL repository, which is computed as content is staged
+     *                        so that the OCFL client does not read the staged files again, or null to leave the
+     *                        digests to the OCFL client
+     * @param hashingEngine the engine that hashes content as it is staged
+     */
+    public PlainOcflObjectSession(final String sessionId,
+                                  final MutableOcflRepository ocflRepo,
+                                  final String ocflObjectId,
+                                  final Path objectStaging,
+                                  final boolean disableChecksumValidation,
+                                  final StagingMode stagingMode,
+                                  final DigestAlgorithm digestAlgorithm,
+                                  final HashingEngine hashingEngine) {
         this.sessionId = sessionId;
         this.ocflRepo = ocflRepo;
         this.ocflObjectId = ocflObjectId;
         this.objectStaging = objectStaging;
         this.disableChecksumValidation = disableChecksumValidation;
+        this.stagingMode = stagingMode;
+        this.digestAlgorithm = digestAlgorithm;
+        this.hashingEngine = hashingEngine;
 
         this.versionInfo = new VersionInfo();
         this.ocflOptions = new OcflOption[] {OcflOption.MOVE_SOURCE, OcflOption.OVERWRITE};
         this.digests = new HashMap<>();
+        this.stagedFiles = new HashMap<>();
         this.deletePaths = new HashSet<>();
     }
 
@@ -128,7 +192,7 @@ public class PlainOcflObjectSession implements OcflObjectSession {
         }
 
         final var contentDst = createStagingPath(contentPath);
-        write(content, contentDst);
+        write(content, contentDst, logicalPath);
         return headers;
     }
 
@@ -164,25 +228,18 @@ public class PlainOcflObjectSession implements OcflObjectSession {
 
         if (Files.exists(objectStaging)) {
             ocflRepo.updateObject(ObjectVersionId.head(ocflObjectId), versionInfo, updater -> {
-                if (Files.exists(objectStaging)) {
+                // the Fedora 3 digests were validated as the files were staged
+                if (digestAlgorithm != null) {
+                    stagedFiles.forEach((logicalPath, stagedFile) -> {
+                        updater.unsafeAddPath(stagedFile.digests.get(OCFL_DIGEST), stagedFile.path, logicalPath,
+                                ocflOptions);
+                    });
+                } else if (Files.exists(objectStaging)) {
                     if (SystemUtils.IS_OS_WINDOWS) {
                         addDecodedPaths(updater, ocflOptions);
                     } else {
                         updater.addPath(objectStaging, ocflOptions);
                     }
-                    digests.forEach((logicalPath, digestInfo) -> {
-                        digestInfo.forEach((digestType, digestValue) -> {
-                            try {
-                                updater.addFileFixity(logicalPath, DigestAlgorithm.fromOcflName(digestType, digestType),
-                                        digestValue);
-                            } catch (OcflInputException e) {
-                                if (!e.getMessage().contains("not newly added in this update")) {
-                                    throw e;
-                                }
-                            }
-                        });
-                    });
-                    updater.clearFixityBlock();
                 }
             });
         }
@@ -300,16 +357,94 @@ public class PlainOcflObjectSession implements OcflObjectSession {
         return stagingPath;
     }
 
-    private void write(final InputStream content, final Path destination) {
+    private void write(final InputStream content, final Path destination, final String logicalPath) {
         if (content != null) {
             try {
-                Files.copy(content, destination, StandardCopyOption.REPLACE_EXISTING);
+                final var toDigest = digestsToCompute(logicalPath);
+                final Map<String, String> computed;
+                if (stagingMode != StagingMode.STREAM && content instanceof SourceFileInputStream) {
+                    try (content) {
+                        stage(((SourceFileInputStream) content).getFile(), destination);
+                    }
+                    computed = toDigest.isEmpty() ? Map.of() : hashingEngine.digestFile(destination, toDigest);
+                } else if (!toDigest.isEmpty()) {
+                    final var digestStream = new MultiDigestInputStream(content, toDigest);
+                    Files.copy(digestStream, destination, StandardCopyOption.REPLACE_EXISTING);
+                    computed = digestStream.hexDigests();
+                } else {
+                    Files.copy(content, destination, StandardCopyOption.REPLACE_EXISTING);
+                    computed = Map.of();
+                }
+                validateFixity(logicalPath, computed);
+                stagedFiles.put(logicalPath, new StagedFile(destination, computed));
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
         }
     }
 
+    /**
+     * @return the digests to compute as a file is staged: the OCFL digest, if the session computes it, and the
+     *         Fedora 3 digest to validate
+     */
+    private Map<String, MessageDigest> digestsToCompute(final String logicalPath) {
+        final var toDigest = new HashMap<String, MessageDigest>();
+        if (digestAlgorithm != null) {
+            try {
+                toDigest.put(OCFL_DIGEST, hashingEngine.newDigest(digestAlgorithm.getJavaStandardName()));
+            } catch (NoSuchAlgorithmException e) {
+                // the OCFL client has already resolved the algorithm with the same providers
+                throw new IllegalStateException(e);
+            }
+        }
+        digests.getOrDefault(logicalPath, new HashMap<>()).keySet().forEach(digestType -> {
+            try {
+                toDigest.put(digestType, hashingEngine.newDigest(digestType));
+            } catch (NoSuchAlgorithmException e) {
+                LOG.warn("{}/{}: no digest algorithm {}, the content is not validated", ocflObjectId, logicalPath,
+                        digestType);
+            }
+        });
+        return toDigest;
+    }
+
+    /**
+     * Validates the Fedora 3 digest of a staged file, before the session is committed.
+     */
+    private void validateFixity(final String logicalPath, final Map<String, String> computed) {
+        digests.getOrDefault(logicalPath, new HashMap<>()).forEach((digestType, expected) -> {
+            final var actual = computed.get(digestType);
+            if (actual != null && !actual.equalsIgnoreCase(expected)) {
+                throw new RuntimeException(String.format("%s/%s: digest %s doesn't match expected digest %s",
+                        ocflObjectId, logicalPath, actual, expected));
+            }
+        });
+    }
+
+    /**
+     * Stages a file without copying it through the JVM. Its digests are then computed by mapping the staged file.
+     */
+    private void stage(final Path source, final Path destination) throws IOException {
+        Files.deleteIfExists(destination);
+        if (stagingMode == StagingMode.LINK) {
+            try {
+                Files.createLink(destination, source);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                // e.g. the source is on another filesystem
+                LOG.debug("Unable to link {}, copying it instead: {}", source, e.toString());
+            }
+        }
+        try (var in = FileChannel.open(source, StandardOpenOption.READ);
+             var out = FileChannel.open(destination, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+
     private PersistencePaths resolvePersistencePaths(final ResourceHeaders headers) {
         final var resourceId = headers.getId();
         final PersistencePaths paths;
@@ -366,6 +501,20 @@ public class PlainOcflObjectSession implements OcflObjectSession {
         }
     }
 
+    /**
+     * A file staged with its digests.
+     */
+    private static class StagedFile {
+
+        private final Path path;
+        private final Map<String, String> digests;
+
+        StagedFile(final Path path, final Map<String, String> digests) {
+            this.path = path;
+            this.digests = digests;
+        }
+    }
+
     private void enforceOpen() {
         if (closed) {
             throw new IllegalStateException(
@@ -17,6 +17,7 @@
 package org.fcrepo.migration.handlers.ocfl;
 
 import io.ocfl.api.MutableOcflRepository;
+import io.ocfl.api.model.DigestAlgorithm;
 import org.fcrepo.storage.ocfl.OcflObjectSession;
 import org.fcrepo.storage.ocfl.OcflObjectSessionFactory;
 import org.slf4j.Logger;
@@ -41,6 +42,10 @@ public class PlainOcflObjectSessionFactory implements OcflObjectSessionFactory {
     private final String defaultVersionUserAddress;
     private final boolean disableChecksumValidation;
 
+    private StagingMode stagingMode = StagingMode.STREAM;
+    private DigestAlgorithm digestAlgorithm;
+    private HashingEngine hashingEngine = HashingEngine.getDefault();
+
     private boolean closed = false;
 
     /**
@@ -65,6 +70,28 @@ public class PlainOcflObjectSessionFactory implements OcflObjectSessionFactory {
         this.disableChecksumValidation = disableChecksumValidation;
     }
 
+    /**
+     * @param stagingMode how sessions stage content that is stored in a file
+     */
+    public void setStagingMode(final StagingMode stagingMode) {
+        this.stagingMode = stagingMode;
+    }
+
+    /**
+     * @param digestAlgorithm the digest algorithm of the OCFL repository, for sessions to compute as they stage
+     *                        content, or null to leave the digests to the OCFL client
+     */
+    public void setDigestAlgorithm(final DigestAlgorithm digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    /**
+     * @param hashingEngine the engine that sessions hash content with as they stage it
+     */
+    public void setHashingEngine(final HashingEngine hashingEngine) {
+        this.hashingEngine = hashingEngine;
+    }
+
     @Override
     public OcflObjectSession newSession(final String ocflObjectId) {
         enforceOpen();
@@ -75,7 +102,10 @@ public class PlainOcflObjectSessionFactory implements OcflObjectSessionFactory {
                 ocflRepo,
                 ocflObjectId,
                 stagingRoot.resolve(sessionId),
-                disableChecksumValidation
+                disableChecksumValidation,
+                stagingMode,
+                digestAlgorithm,
+                hashingEngine
         );
 
         session.versionAuthor(defaultVersionUserName, defaultVersionUserAddress);
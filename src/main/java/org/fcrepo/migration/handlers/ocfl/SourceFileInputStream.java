@@ -0,0 +1,74 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The content of a datastream version that is stored in a file, which a session may stage from the file itself
+ * instead of reading the stream. The file is only opened if the stream is read.
+ */
+class SourceFileInputStream extends InputStream {
+
+    private final Path file;
+
+    private InputStream content;
+
+    /**
+     * @param file the file holding the content
+     * @param content a stream of the file that is already open, or null
+     */
+    SourceFileInputStream(final Path file, final InputStream content) {
+        this.file = file;
+        this.content = content;
+    }
+
+    /**
+     * @return the file holding the content
+     */
+    Path getFile() {
+        return file;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return content().read();
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        return content().read(b, off, len);
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        return content().skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return content().available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (content != null) {
+            content.close();
+        }
+    }
+
+    private InputStream content() throws IOException {
+        if (content == null) {
+            content = new BufferedInputStream(Files.newInputStream(file));
+        }
+        return content;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+/**
+ * How a {@link PlainOcflObjectSession} stages datastream content that is stored in a file, such as the managed
+ * datastreams of a Fedora 3 datastream store. Other content is always copied from its stream.
+ */
+public enum StagingMode {
+
+    /**
+     * Copy the content from its stream.
+     */
+    STREAM,
+
+    /**
+     * Copy the file within the kernel, with {@link java.nio.channels.FileChannel#transferTo}.
+     */
+    TRANSFER,
+
+    /**
+     * Hard link the file into the staging directory, or transfer it if it cannot be linked, e.g. because it is on
+     * another filesystem. The migrated OCFL content file then shares its storage with the Fedora 3 file.
+     */
+    LINK
+
+}
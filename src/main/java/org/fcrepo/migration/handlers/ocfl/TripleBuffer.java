@@ -0,0 +1,125 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+/**
+ * The triples of an RDF resource, held without building a Jena Model, as only their serialization is needed.
+ * Each triple is held once, as in a Model, in the order it was first added. Triples are serialized by Jena's N-Triples
+ * writer, so each line is written as it is when a Model is written as N-Triples.
+ */
+class TripleBuffer implements Iterable<Triple> {
+
+    private final Set<Triple> triples = new LinkedHashSet<>();
+
+    /**
+     * Parses RDF into a buffer.
+     *
+     * @param content the RDF
+     * @param lang the RDF syntax of the content
+     * @return the triples of the content
+     */
+    static TripleBuffer parse(final InputStream content, final Lang lang) {
+        final var buffer = new TripleBuffer();
+        RDFParser.source(content).lang(lang).parse(new StreamRDFBase() {
+            @Override
+            public void triple(final Triple triple) {
+                buffer.add(triple);
+            }
+        });
+        return buffer;
+    }
+
+    /**
+     * Serializes the triples of several buffers as N-Triples, writing a triple held by more than one buffer once.
+     *
+     * @param buffers the buffers, any of which may be null
+     * @return n-triples input stream
+     */
+    static InputStream toNTriples(final TripleBuffer... buffers) {
+        final Set<Triple> union = new LinkedHashSet<>();
+        for (final var buffer : buffers) {
+            if (buffer != null) {
+                union.addAll(buffer.triples);
+            }
+        }
+        final var output = new ByteArrayOutputStream(union.size() * 128);
+        RDFDataMgr.writeTriples(output, union.iterator());
+        return new ByteArrayInputStream(output.toByteArray());
+    }
+
+    /**
+     * @param triple a triple
+     */
+    void add(final Triple triple) {
+        triples.add(triple);
+    }
+
+    /**
+     * Adds a string literal, if there is one.
+     *
+     * @param s the subject URI
+     * @param p the predicate URI
+     * @param o the literal, or null
+     */
+    void addStringLiteral(final String s, final String p, final String o) {
+        if (o != null) {
+            add(s, p, NodeFactory.createLiteral(o));
+        }
+    }
+
+    /**
+     * Adds an xsd:dateTime literal, if there is one.
+     *
+     * @param s the subject URI
+     * @param p the predicate URI
+     * @param date the lexical form of the date, or null
+     */
+    void addDateLiteral(final String s, final String p, final String date) {
+        if (date != null) {
+            add(s, p, NodeFactory.createLiteral(date, XSDDatatype.XSDdateTime));
+        }
+    }
+
+    /**
+     * Adds an xsd:long literal, if there is one.
+     *
+     * @param s the subject URI
+     * @param p the predicate URI
+     * @param number the number, or -1
+     */
+    void addLongLiteral(final String s, final String p, final long number) {
+        if (number != -1) {
+            add(s, p, NodeFactory.createLiteral(Long.toString(number), XSDDatatype.XSDlong));
+        }
+    }
+
+    private void add(final String s, final String p, final Node o) {
+        triples.add(Triple.create(NodeFactory.createURI(s), NodeFactory.createURI(p), o));
+    }
+
+    @Override
+    public Iterator<Triple> iterator() {
+        return triples.iterator();
+    }
+
+}
@@ -8,56 +8,96 @@ package org.fcrepo.migration.pidlist;
 
 import org.slf4j.Logger;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.google.common.hash.Hashing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
  * This class "accepts" PIDs that have not already been migrated.
  * <p>
- * The approach taking by this implementation is to record:
- * - the number of objects that have been migrated, and
- * - the PID of the last migrated object
+ * The PIDs of the objects that have been migrated are appended to a journal, one per line, as each object completes.
+ * Every line is written as soon as the object completes, so a killed process loses none of them, and the journal is
+ * synced to disk every {@link #SYNC_BATCH} PIDs or {@link #SYNC_INTERVAL_MILLIS} ms, so at most that many objects are
+ * migrated again after a system crash. On startup, the journal is loaded into a set of 128 bit PID hashes, and any
+ * PID in the set is skipped, regardless of the order in which objects are enumerated. Hashes are kept instead of the
+ * PIDs to bound memory use for very large repositories, at the cost that a PID whose hash collides with that of a
+ * migrated PID would be skipped; with 128 bits, the chance of any collision among a billion PIDs is below 10^-20.
+ * <p>
+ * A PID is only appended if it is not already in the set, so the journal holds each migrated PID once and does not
+ * grow beyond the number of objects, however often the migration is resumed. Only a crash can leave a torn line or a
+ * duplicate, and those are removed by compacting the journal when it is loaded.
  * <p>
- * The assumption is that the order of processed PIDs/Objects is deterministic
+ * Objects may complete concurrently, on several worker threads.
  *
  * @author awoods
  * @since 2019-11-08
  */
-public class ResumePidListManager implements PidListManager {
+public class ResumePidListManager implements PidListManager, Closeable {
 
     private static final Logger LOGGER = getLogger(ResumePidListManager.class);
 
-    private File resumeFile;
+    static final String JOURNAL_FILE = "resume.journal";
 
-    // Accept all PIDs, even if they have been processed before
-    private boolean acceptAll;
+    // The positional resume file written by earlier versions
+    private static final String LEGACY_RESUME_FILE = "resume.txt";
 
-    // Position of the last processed PID/Object (assuming deterministic ordering)
-    private int pidResumeIndex;
+    static final int SYNC_BATCH = 100;
+    static final long SYNC_INTERVAL_MILLIS = 1000;
 
-    // Value of the last processed PID/Object
-    private String pidResumeValue;
+    private final Path journal;
+
+    // Accept all PIDs, even if they have been processed before
+    private final boolean acceptAll;
 
-    // Number of times "accept" has been called
-    private int index = 0;
+    // Hashes of the PIDs in the journal
+    private final HashSet128 completed = new HashSet128();
 
-    // Last value of current PID
-    private String value = "foo";
+    private FileChannel channel;
 
+    private int unsynced;
+    private long lastSync = System.currentTimeMillis();
 
     /**
      * Constructor
      *
-     * @param pidDir where resume file will be read/created
-     * @param acceptAll whether to process all pids even if they've been processed before.
+     * @param pidDir where the resume journal will be read/created
+     * @param acceptAll whether to process all pids even if they've been processed before. A new journal is started.
      */
     public ResumePidListManager(final File pidDir, final boolean acceptAll) {
+        this(pidDir, acceptAll, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pidDir where the resume journal will be read/created
+     * @param acceptAll whether to process all pids even if they've been processed before. A new journal is started.
+     * @param ignoreLegacyResumeFile whether to start a new journal when resuming from a directory that only has the
+     *                               resume file of an earlier version, which otherwise fails
+     */
+    public ResumePidListManager(final File pidDir, final boolean acceptAll, final boolean ignoreLegacyResumeFile) {
         if (!pidDir.exists()) {
             pidDir.mkdirs();
         }
@@ -67,102 +107,233 @@ public class ResumePidListManager implements PidListManager {
         }
 
         this.acceptAll = acceptAll;
-        this.resumeFile = new File(pidDir, "resume.txt");
-        LOGGER.debug("Resume pid file: {}, accept all? {}", resumeFile.getAbsolutePath(), acceptAll);
+        this.journal = pidDir.toPath().resolve(JOURNAL_FILE);
+        LOGGER.debug("Resume journal: {}, accept all? {}", journal.toAbsolutePath(), acceptAll);
 
         try {
-            // Load pidResumeIndex and pidResumeValue
-            loadResumeFile();
-
+            if (acceptAll) {
+                channel = FileChannel.open(journal, CREATE, WRITE, TRUNCATE_EXISTING);
+            } else {
+                final File legacyResumeFile = new File(pidDir, LEGACY_RESUME_FILE);
+                if (!Files.exists(journal) && legacyResumeFile.exists()) {
+                    if (!ignoreLegacyResumeFile) {
+                        throw new IllegalStateException(legacyResumeFile + " was written by an earlier version and"
+                                + " records a position rather than the migrated PIDs, so the migration cannot be"
+                                + " resumed. Finish it with that version, or run with --ignore-legacy-resume to start"
+                                + " a new journal and migrate all objects again.");
+                    }
+                    LOGGER.warn("{} records a position rather than the migrated PIDs, and cannot be used to resume;"
+                            + " all objects will be migrated", legacyResumeFile);
+                }
+                loadJournal();
+                channel = FileChannel.open(journal, CREATE, WRITE, APPEND);
+            }
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
     }
 
-    private void loadResumeFile() throws IOException {
-
-        // First run? file does not yet exist?
-        if (!resumeFile.exists() || resumeFile.length() == 0) {
-            updateResumeFile(value, index);
+    /**
+     * Loads the journal into the set of completed PIDs, compacting it if it has a torn last line or duplicates.
+     */
+    private void loadJournal() throws IOException {
+        if (!Files.exists(journal)) {
+            return;
         }
 
-        try (final BufferedReader reader = new BufferedReader(new FileReader(resumeFile))) {
-
-            // First line contains PID
-            pidResumeValue = reader.readLine();
+        long lines = 0;
+        long complete = 0;
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(journal), 1 << 16)) {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+            long position = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                position++;
+                if (b == '\n') {
+                    completed.add(hash(line.toString(UTF_8)));
+                    line.reset();
+                    lines++;
+                    complete = position;
+                } else {
+                    line.write(b);
+                }
+            }
+        }
 
-            // Second line contains index
-            pidResumeIndex = Integer.parseInt(reader.readLine());
+        LOGGER.info("Resuming, {} objects have already been migrated", completed.size());
+        if (complete < Files.size(journal) || lines > completed.size()) {
+            compact();
         }
     }
 
+    /**
+     * Rewrites the journal with one line per PID, replacing it atomically.
+     */
+    private void compact() throws IOException {
+        LOGGER.debug("Compacting resume journal {}", journal);
+        final Path tmp = journal.resolveSibling(JOURNAL_FILE + ".tmp");
+        final HashSet128 written = new HashSet128();
+        try (final InputStream in = new BufferedInputStream(Files.newInputStream(journal), 1 << 16);
+             final FileChannel tmpChannel = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(tmpChannel), 1 << 16);
+            final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n') {
+                    if (written.add(hash(line.toString(UTF_8)))) {
+                        line.writeTo(out);
+                        out.write('\n');
+                    }
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+            // a remaining partial line was torn by a crash, and is dropped
+            out.flush();
+            tmpChannel.force(true);
+        }
+        Files.move(tmp, journal, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
 
     /**
      * This method
-     * - returns false if "accept" has been called less than pidResumeIndex times
-     * - returns true if "accept" has been called
+     * - returns false if the PID has been migrated before, unless accepting all
+     * - returns true otherwise
      */
     @Override
-    public boolean accept(final String pid) {
-        final String logMsg = "PID: " + pid + ", accept? ";
-
-        final String previousValue = value;
-        value = pid;
-        index++;
-
-        // Do not accept.. the previous run index is higher
-        if (index - 1 < pidResumeIndex) {
+    public synchronized boolean accept(final String pid) {
+        final boolean doAccept = acceptAll || !completed.contains(hash(pid));
+        LOGGER.debug("PID: {}, accept? {}", pid, doAccept);
+        return doAccept;
+    }
 
-            // Are we accepting all?
-            LOGGER.debug(logMsg + acceptAll);
-            return acceptAll;
+    /**
+     * Records that the object with the PID has been migrated, so that it is skipped when the migration is resumed.
+     *
+     * @param pid the PID of the migrated object
+     */
+    public synchronized void completed(final String pid) {
+        if (!completed.add(hash(pid))) {
+            return;
         }
-
-        // We are at the first PID that has not previously been processed
-        if (index - 1 == pidResumeIndex) {
-
-            // index matches, but value DOES NOT match the last state of previous run!
-            if (!previousValue.equalsIgnoreCase(pidResumeValue)) {
-                final String msg = "Number of accept requests does not align with expected PID value! " +
-                        "index: " + index + ", " +
-                        "pid: " + pid + ", " +
-                        "expected pid: " + pidResumeValue;
-                throw new IllegalStateException(msg);
+        try {
+            final ByteBuffer line = ByteBuffer.wrap((pid + "\n").getBytes(UTF_8));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            unsynced++;
+            final long now = System.currentTimeMillis();
+            if (unsynced >= SYNC_BATCH || now - lastSync >= SYNC_INTERVAL_MILLIS) {
+                channel.force(false);
+                unsynced = 0;
+                lastSync = now;
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        // New "accept" requests
-        updateResumeFile(value, index);
-
-        LOGGER.debug(logMsg + true);
-        return true;
+    /**
+     * Syncs and closes the journal.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
     }
 
     /**
-     * This method resets the current index and value, and resets the resume file
+     * This method clears the journal
      * -- Used for test --
      */
-    void reset() {
-        index = 0;
-        value = "foo";
-        updateResumeFile(value, index);
+    synchronized void reset() {
+        completed.clear();
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private void updateResumeFile(final String pid, final int index) {
-        // Create writer of resumeFile (expense to do everytime... but need to overwrite file)
-        PrintWriter resumeFileWriter = null;
-        try {
-            resumeFileWriter = new PrintWriter(new FileWriter(resumeFile, false));
+    private static byte[] hash(final String pid) {
+        return Hashing.murmur3_128().hashString(pid, UTF_8).asBytes();
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * An open-addressing set of 128 bit hashes, which takes 32 bytes or less per PID rather than a String and a map
+     * entry. Each hash is stored as two longs in adjacent slots.
+     */
+    private static class HashSet128 {
+
+        // zero marks an empty slot, so a zero high half is stored as this value instead
+        private static final long ZERO = 0x9E3779B97F4A7C15L;
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] slots = new long[INITIAL_CAPACITY * 2];
+        private int size;
+
+        boolean contains(final byte[] hash) {
+            final ByteBuffer buffer = ByteBuffer.wrap(hash);
+            return contains(high(buffer.getLong()), buffer.getLong());
+        }
+
+        boolean add(final byte[] hash) {
+            final ByteBuffer buffer = ByteBuffer.wrap(hash);
+            final long high = high(buffer.getLong());
+            final long low = buffer.getLong();
+            if (contains(high, low)) {
+                return false;
+            }
+            // kept at most half full
+            if ((size + 1) * 4 > slots.length) {
+                final long[] old = slots;
+                slots = new long[old.length * 2];
+                for (int i = 0; i < old.length; i += 2) {
+                    if (old[i] != 0) {
+                        insert(old[i], old[i + 1]);
+                    }
+                }
+            }
+            insert(high, low);
+            size++;
+            return true;
+        }
+
+        private static long high(final long value) {
+            return value == 0 ? ZERO : value;
         }
 
-        resumeFileWriter.write(pid);
-        resumeFileWriter.write(System.getProperty("line.separator"));
-        resumeFileWriter.write(Integer.toString(index));
+        private boolean contains(final long high, final long low) {
+            final int mask = slots.length / 2 - 1;
+            for (int i = (int) low & mask; slots[i * 2] != 0; i = (i + 1) & mask) {
+                if (slots[i * 2] == high && slots[i * 2 + 1] == low) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void insert(final long high, final long low) {
+            final int mask = slots.length / 2 - 1;
+            int i = (int) low & mask;
+            while (slots[i * 2] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i * 2] = high;
+            slots[i * 2 + 1] = low;
+        }
+
+        int size() {
+            return size;
+        }
 
-        resumeFileWriter.flush();
-        resumeFileWriter.close();
+        void clear() {
+            slots = new long[INITIAL_CAPACITY * 2];
+            size = 0;
+        }
     }
 }
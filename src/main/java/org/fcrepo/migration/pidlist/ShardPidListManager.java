@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.pidlist;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+
+/**
+ * This class "accepts" the PIDs that belong to one shard of a migration that is split across several processes.
+ * <p>
+ * A PID belongs to the shard given by a stable hash of the PID, so every process assigns each PID to the same shard
+ * without any coordination, regardless of the order in which the PIDs are enumerated.
+ */
+public class ShardPidListManager implements PidListManager {
+
+    private static final Logger LOGGER = getLogger(ShardPidListManager.class);
+
+    // Shards are numbered from 1
+    private final int shard;
+
+    private final int shardCount;
+
+    /**
+     * Constructor
+     *
+     * @param shard the shard to accept, from 1 to shardCount
+     * @param shardCount the number of shards
+     */
+    public ShardPidListManager(final int shard, final int shardCount) {
+        if (shardCount < 1 || shard < 1 || shard > shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shard + "/" + shardCount
+                    + ", must be i/N with 1 <= i <= N");
+        }
+        this.shard = shard;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * @param spec a shard in the form "i/N", e.g. "2/4"
+     * @return the manager for the shard
+     */
+    public static ShardPidListManager parse(final String spec) {
+        final String[] parts = spec.trim().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid shard \"" + spec + "\", must be i/N, e.g. 2/4");
+        }
+        try {
+            return new ShardPidListManager(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shard \"" + spec + "\", must be i/N, e.g. 2/4");
+        }
+    }
+
+    /**
+     * @param pid a PID
+     * @param shardCount the number of shards
+     * @return the shard of the PID, from 1 to shardCount
+     */
+    public static int shardOf(final String pid, final int shardCount) {
+        return (int) Math.floorMod(Hashing.murmur3_128().hashString(pid, UTF_8).asLong(), (long) shardCount) + 1;
+    }
+
+    @Override
+    public boolean accept(final String pid) {
+        final boolean doAccept = shardOf(pid, shardCount) == shard;
+        LOGGER.debug("PID: {}, accept? {}", pid, doAccept);
+        return doAccept;
+    }
+
+    /**
+     * @return the shard in the form "i/N"
+     */
+    public String getSpec() {
+        return shard + "/" + shardCount;
+    }
+
+    /**
+     * @return a name for the shard that can be used in file names, e.g. "shard-2-of-4"
+     */
+    public String getName() {
+        return "shard-" + shard + "-of-" + shardCount;
+    }
+
+}
@@ -4,15 +4,20 @@ import org.slf4j.Logger;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
  * This class "accepts" and PIDs that are included in the user-provided list
+ * <p>
+ * The list is read a line at a time, and held as a sorted array of the UTF-8 encoded PIDs, which is searched with a
+ * binary search. The PIDs that have been accepted are marked in a bit set, with a count of the PIDs yet to be
+ * accepted, so that checking whether the whole list has been processed takes constant time.
  *
  * @author awoods
  * @since 2019-11-08
@@ -21,8 +26,13 @@ public class UserProvidedPidListManager implements PidListManager {
 
     private static final Logger LOGGER = getLogger(UserProvidedPidListManager.class);
 
-    private Set<String> pidList = new HashSet<>();
-    private Set<String> processedPids = new HashSet<>();
+    // Sorted, without duplicates
+    private byte[][] pidList = new byte[0][];
+
+    // The indexes in pidList of the PIDs that have been accepted
+    private final BitSet processedPids = new BitSet();
+
+    private int remaining;
 
     /**
      * Constructor
@@ -38,32 +48,63 @@ public class UserProvidedPidListManager implements PidListManager {
                         pidListFile.getAbsolutePath());
             }
 
-            try (BufferedReader reader = new BufferedReader(new FileReader(pidListFile));) {
-                reader.lines().forEach(l -> pidList.add(l));
+            try {
+                load(pidListFile);
             } catch (IOException e) {
                 // Should not happen based on previous check
                 throw new RuntimeException(e);
             }
+            remaining = pidList.length;
+            LOGGER.info("Migrating the {} PIDs listed in {}", pidList.length, pidListFile);
         }
     }
 
+    private void load(final File pidListFile) throws IOException {
+        byte[][] pids = new byte[1024][];
+        int count = 0;
+        boolean blankLines = false;
+        try (final BufferedReader reader = Files.newBufferedReader(pidListFile.toPath(), UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    blankLines = true;
+                    continue;
+                }
+                if (count == pids.length) {
+                    pids = Arrays.copyOf(pids, count * 2);
+                }
+                pids[count++] = line.getBytes(UTF_8);
+            }
+        }
+        // an empty list accepts every PID, which a file of blank lines is unlikely to have been meant to do
+        if (count == 0 && blankLines) {
+            throw new IllegalArgumentException("File lists no PIDs, only blank lines :" +
+                    pidListFile.getAbsolutePath());
+        }
+
+        Arrays.sort(pids, 0, count, Arrays::compare);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || !Arrays.equals(pids[unique - 1], pids[i])) {
+                pids[unique++] = pids[i];
+            }
+        }
+        pidList = Arrays.copyOf(pids, unique);
+    }
 
     @Override
     public boolean accept(final String pid) {
-        final boolean doAccept =  pidList.isEmpty() || pidList.contains(pid);
+        final int index = pidList.length == 0 ? -1 : Arrays.binarySearch(pidList, pid.getBytes(UTF_8), Arrays::compare);
+        final boolean doAccept = pidList.length == 0 || index >= 0;
         LOGGER.debug("PID: {}, accept? {}", pid, doAccept);
-        if (doAccept) {
-            processedPids.add(pid);
+        if (index >= 0 && !processedPids.get(index)) {
+            processedPids.set(index);
+            remaining--;
         }
         return doAccept;
     }
 
     public boolean finishedProcessingAllPids() {
-        if (!pidList.isEmpty()) {
-            if (pidList.equals(processedPids)) {
-                return true;
-            }
-        }
-        return false;
+        return pidList.length > 0 && remaining == 0;
     }
 }
@@ -0,0 +1,56 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests writing, reading and merging migration reports.
+ */
+public class MigrationReportTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void testWriteReadAndMerge() throws IOException {
+        final MigrationReport shard1 = new MigrationReport();
+        shard1.setShard("1/2");
+        shard1.objectMigrated();
+        shard1.objectMigrated();
+        shard1.objectFailed("pid:3");
+        shard1.objectSkipped();
+        shard1.setComplete(true);
+
+        final Path file = tempDir.getRoot().toPath().resolve("reports").resolve("shard-1-of-2.report");
+        shard1.write(file);
+        final MigrationReport read = MigrationReport.read(file);
+        assertEquals("1/2", read.getShard());
+        assertTrue(read.isComplete());
+        assertEquals(2, read.getMigrated());
+        assertEquals(1, read.getFailed());
+        assertEquals(1, read.getSkipped());
+        assertEquals(List.of("pid:3"), read.getFailedPids());
+
+        final MigrationReport shard2 = new MigrationReport();
+        shard2.objectMigrated();
+        shard2.objectUnreadable();
+        read.add(shard2);
+        assertEquals(3, read.getMigrated());
+        assertEquals(1, read.getUnreadable());
+    }
+
+}
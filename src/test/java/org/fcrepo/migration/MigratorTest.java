@@ -0,0 +1,176 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the parallel mode of Migrator
+ */
+public class MigratorTest {
+
+    private List<FedoraObjectProcessor> processors;
+
+    private Set<String> processed;
+
+    private AtomicInteger handlersCreated;
+
+    private Migrator migrator;
+
+    @Before
+    public void setUp() throws Exception {
+        processed = Collections.synchronizedSet(new HashSet<>());
+        handlersCreated = new AtomicInteger();
+        processors = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            processors.add(processor("pid:" + i));
+        }
+
+        final ObjectSource source = mock(ObjectSource.class);
+        when(source.iterator()).thenAnswer(invocation -> processors.iterator());
+
+        migrator = new Migrator();
+        migrator.setSource(source);
+        migrator.setThreads(4);
+        migrator.setHandlerFactory(() -> {
+            handlersCreated.incrementAndGet();
+            return mock(StreamingFedoraObjectHandler.class);
+        });
+    }
+
+    @Test
+    public void testParallelRunProcessesAllObjects() throws Exception {
+        migrator.run();
+
+        assertEquals(20, processed.size());
+        assertTrue("Handlers must not be created per object", handlersCreated.get() <= 4);
+        for (final FedoraObjectProcessor processor : processors) {
+            verify(processor).close();
+        }
+    }
+
+    @Test
+    public void testParallelRunOnVirtualThreads() throws Exception {
+        // falls back to platform threads on JVMs without virtual threads
+        migrator.setVirtualThreads(true);
+        migrator.run();
+
+        assertEquals(20, processed.size());
+    }
+
+    @Test
+    public void testParallelRunHonorsLimit() throws Exception {
+        migrator.setLimit(5);
+        migrator.run();
+
+        assertEquals(5, processed.size());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(processed.contains("pid:" + i));
+        }
+    }
+
+    @Test
+    public void testParallelRunContinuesOnError() throws Exception {
+        failOn(processors.get(3));
+        migrator.setContinueOnError(true);
+        migrator.run();
+
+        assertEquals(19, processed.size());
+    }
+
+    @Test
+    public void testParallelRunStopsOnError() throws Exception {
+        for (final FedoraObjectProcessor processor : processors) {
+            doAnswer(invocation -> {
+                Thread.sleep(100);
+                return null;
+            }).when(processor).processObject(any());
+        }
+        failOn(processors.get(0));
+        try {
+            migrator.run();
+            fail("Expected the migration to fail");
+        } catch (final RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("MIGRATION_FAILURE: pid=\"pid:0\""));
+        }
+        // the producer stops handing out objects after the failure, so the tail of the source is never migrated
+        verify(processors.get(19), never()).processObject(any());
+    }
+
+    @Test
+    public void testParallelRunStartsLargestFirst() throws Exception {
+        final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        // holds each worker on its first object until both have started one, so that neither takes a later object
+        // before the other takes the second in the order they were submitted
+        final CountDownLatch firstStarted = new CountDownLatch(2);
+        for (final FedoraObjectProcessor processor : processors) {
+            final String pid = processor.getObjectInfo().getPid();
+            doAnswer(invocation -> {
+                started.add(pid);
+                firstStarted.countDown();
+                assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+                processed.add(pid);
+                return null;
+            }).when(processor).processObject(any());
+        }
+        migrator.setThreads(2);
+        migrator.setScheduleWindow(processors.size());
+        migrator.setSizeEstimator(info -> Long.parseLong(info.getPid().substring("pid:".length())));
+        migrator.run();
+
+        assertEquals(20, processed.size());
+        assertEquals(Set.of("pid:19", "pid:18"), new HashSet<>(started.subList(0, 2)));
+        for (final FedoraObjectProcessor processor : processors) {
+            verify(processor).close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testParallelRunRequiresHandlerFactory() throws Exception {
+        migrator.setHandlerFactory(null);
+        migrator.run();
+    }
+
+    private FedoraObjectProcessor processor(final String pid) throws Exception {
+        final ObjectInfo info = mock(ObjectInfo.class);
+        when(info.getPid()).thenReturn(pid);
+
+        final FedoraObjectProcessor processor = mock(FedoraObjectProcessor.class);
+        when(processor.getObjectInfo()).thenReturn(info);
+        doAnswer(invocation -> {
+            processed.add(pid);
+            return null;
+        }).when(processor).processObject(any());
+        return processor;
+    }
+
+    private void failOn(final FedoraObjectProcessor processor) throws Exception {
+        doAnswer(invocation -> {
+            throw new RuntimeException("failed to migrate");
+        }).when(processor).processObject(any());
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * Tests resolving datastream ids to the paths given by an Akubra path pattern.
+ */
+public class AkubraHashPathIDResolverTest {
+
+    @Test
+    public void testResolveWithPathPattern() {
+        final var resolver = new AkubraHashPathIDResolver(new File("src/test/resources/akubraFS/datastreamStore"));
+        assertEquals(new File("src/test/resources/akubraFS/datastreamStore/e5/"
+                        + "info%3Afedora%2Fexample%3A1%2FDS2%2FDS2.0"),
+                resolver.resolveInternalID("example:1+DS2+DS2.0").getFile().get());
+    }
+
+    @Test
+    public void testResolveWithProbe() {
+        final var resolver = new AkubraHashPathIDResolver(
+                new File("src/test/resources/inline-akubra/datastreams/dlmap"), "##");
+        assertEquals(new File("src/test/resources/inline-akubra/datastreams/dlmap/e/9e/b4/"
+                        + "info%3Afedora%2F1711.dl%3AAccess-policy-open-access-UW-Madison-all%2FXACML%2FXACML.0"),
+                resolver.resolveInternalID("1711.dl:Access-policy-open-access-UW-Madison-all+XACML+XACML.0")
+                        .getFile().get());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUnresolvedID() {
+        new AkubraHashPathIDResolver(new File("src/test/resources/akubraFS/datastreamStore"))
+                .resolveInternalID("example:1+DS3+DS3.0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPathPattern() {
+        new AkubraHashPathIDResolver(new File("src/test/resources/akubraFS/datastreamStore"), "ab");
+    }
+
+    @Test
+    public void testEncode() {
+        assertEquals("info%3Afedora%2Fa%5Fb%3A1%2FDS%2B1%2FDS.1%2E", AkubraHashPathIDResolver.encode(
+                "info:fedora/a_b:1/DS+1/DS.1."));
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.stax2.XMLStreamReader2;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the capture of element content by CapturingReader.
+ */
+public class CapturingReaderTest {
+
+    @Test
+    public void testCaptureElementContent() throws XMLStreamException {
+        final var inline = "\n  <oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\">"
+                + "<!-- comment --><x a='>'>café &amp; more</x></oai_dc:dc>\r\n";
+        final var xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<doc><xmlContent>" + inline
+                + "</xmlContent><xmlContent/><xmlContent a=\"/>\"></xmlContent></doc>";
+
+        final var source = new CapturingReader(new StringReader(xml));
+        final XMLStreamReader2 reader = (XMLStreamReader2) XMLInputFactory.newFactory().createXMLStreamReader(source);
+
+        Assert.assertEquals(inline, nextContent(source, reader));
+        Assert.assertEquals("", nextContent(source, reader));
+        Assert.assertEquals("", nextContent(source, reader));
+    }
+
+    @Test
+    public void testReleasedCharactersAreDiscarded() throws XMLStreamException {
+        final var inline = "<x>" + StringUtils.repeat("a", 100) + "</x>";
+        final var padding = StringUtils.repeat("<pad>" + StringUtils.repeat("b", 1000) + "</pad>", 100);
+        final var xml = "<doc>" + padding + "<xmlContent>" + inline + "</xmlContent>" + padding + "</doc>";
+
+        final var source = new CapturingReader(new StringReader(xml));
+        final XMLStreamReader2 reader = (XMLStreamReader2) XMLInputFactory.newFactory().createXMLStreamReader(source);
+
+        Assert.assertEquals(inline, nextContent(source, reader));
+        try {
+            source.elementContent(0, 10);
+            Assert.fail("the start of the document should have been discarded");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private String nextContent(final CapturingReader source, final XMLStreamReader2 reader)
+            throws XMLStreamException {
+        while (reader.next() != XMLStreamReader.START_ELEMENT || !reader.getLocalName().equals("xmlContent")) {
+            source.release(reader.getLocationInfo().getStartingCharOffset());
+        }
+        final var start = reader.getLocationInfo().getStartingCharOffset();
+        source.release(start);
+        int depth = 0;
+        while (true) {
+            reader.next();
+            if (reader.isStartElement()) {
+                depth++;
+            } else if (reader.isEndElement()) {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            }
+        }
+        return source.elementContent(start, reader.getLocationInfo().getStartingCharOffset());
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.RegexFileFilter;
+import org.fcrepo.migration.FedoraObjectProcessor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests building and reading a FoxmlCatalog, and migrating from it.
+ */
+public class FoxmlCatalogTest {
+
+    private static final File FOXML = new File("src/test/resources/akubraFS/objectStore/info%3Afedora%2Fexample%3A1");
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private File root;
+
+    private Path catalog;
+
+    @Before
+    public void setup() throws IOException {
+        root = tempDir.newFolder("objects");
+        for (final String name : List.of("b/2", "a/1", ".hidden")) {
+            FileUtils.copyFile(FOXML, new File(root, name));
+        }
+        // a larger object
+        Files.write(new File(root, "b/2").toPath(), List.of("<!-- padding -->"),
+                StandardOpenOption.APPEND);
+        Files.write(new File(root, "c").toPath(), List.of("not xml"));
+
+        catalog = tempDir.getRoot().toPath().resolve("objects.catalog");
+        assertEquals(2, FoxmlCatalog.build(root, new RegexFileFilter(Pattern.compile("^[^\\.].*$")), catalog));
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        final List<String> paths = new ArrayList<>();
+        try (final FoxmlCatalog.Reader reader = FoxmlCatalog.open(catalog)) {
+            reader.forEachRemaining(entry -> {
+                assertEquals("example:1", entry.getPid());
+                assertEquals(entry.getPath().toFile().length(), entry.getSize());
+                assertEquals(entry.getPath().toFile().lastModified(), entry.getLastModified());
+                paths.add(relative(entry.getPath()));
+            });
+        }
+        assertEquals(List.of("a/1", "b/2"), paths);
+    }
+
+    @Test
+    public void testMalformedObject() throws IOException {
+        // an object cut off in its header, between the other objects in the sorted order
+        final byte[] foxml = Files.readAllBytes(FOXML.toPath());
+        Files.write(new File(root, "a/2").toPath(), Arrays.copyOf(foxml, 100));
+        assertEquals(2, FoxmlCatalog.build(root, new RegexFileFilter(Pattern.compile("^[^\\.].*$")), catalog));
+
+        final List<String> paths = new ArrayList<>();
+        try (final FoxmlCatalog.Reader reader = FoxmlCatalog.open(catalog)) {
+            reader.forEachRemaining(entry -> paths.add(relative(entry.getPath())));
+        }
+        assertEquals(List.of("a/1", "b/2"), paths);
+    }
+
+    @Test
+    public void testWalkFailure() throws IOException {
+        final byte[] bytes = Files.readAllBytes(catalog);
+        try {
+            FoxmlCatalog.build(root, file -> {
+                if (file.getName().equals("2")) {
+                    throw new IllegalArgumentException("unable to filter " + file);
+                }
+                return !file.getName().startsWith(".");
+            }, catalog);
+            fail("A catalog of a walk that failed should not be written");
+        } catch (final IOException e) {
+            // expected
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(catalog));
+        assertFalse(Files.exists(catalog.resolveSibling(catalog.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        final byte[] bytes = Files.readAllBytes(catalog);
+        Files.write(catalog, Arrays.copyOf(bytes, bytes.length - 1));
+        try (final FoxmlCatalog.Reader reader = FoxmlCatalog.open(catalog)) {
+            reader.forEachRemaining(entry -> { });
+            fail("A truncated catalog should not be read to the end");
+        } catch (final UncheckedIOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testChangedSince() throws IOException {
+        final long built;
+        try (final FoxmlCatalog.Reader reader = FoxmlCatalog.open(catalog)) {
+            assertEquals(root.toPath().toAbsolutePath().normalize(), reader.getRoot());
+            built = reader.getBuilt();
+        }
+        final FileTime before = FileTime.fromMillis(built - 1000);
+        for (final String dir : List.of("", "a", "b")) {
+            Files.setLastModifiedTime(new File(root, dir).toPath(), before);
+        }
+        assertFalse(FoxmlCatalog.changedSince(root.toPath(), built));
+
+        // an object added to an existing directory
+        FileUtils.copyFile(FOXML, new File(root, "a/3"));
+        Files.setLastModifiedTime(new File(root, "a").toPath(), FileTime.fromMillis(built + 1000));
+        assertTrue(FoxmlCatalog.changedSince(root.toPath(), built));
+    }
+
+    @Test
+    public void testEntryUnchanged() throws IOException {
+        final Path path = new File(root, "a/1").toPath();
+        final FoxmlCatalog.Entry entry;
+        try (final FoxmlCatalog.Reader reader = FoxmlCatalog.open(catalog)) {
+            entry = reader.next();
+        }
+        assertEquals(path.toAbsolutePath(), entry.getPath());
+        assertTrue(entry.isUnchanged(Files.readAttributes(path, BasicFileAttributes.class)));
+
+        Files.write(path, List.of("<!-- padding -->"), StandardOpenOption.APPEND);
+        assertFalse(entry.isUnchanged(Files.readAttributes(path, BasicFileAttributes.class)));
+    }
+
+    @Test
+    public void testSource() throws Exception {
+        final var source = new CatalogFoxmlObjectSource(catalog, null, "localhost:8080");
+        assertEquals(List.of("a/1", "b/2"), iterate(source));
+
+        source.setLargestFirst(true);
+        assertEquals(List.of("b/2", "a/1"), iterate(source));
+
+        source.setFilter(entry -> entry.getPath().endsWith("1"));
+        assertEquals(List.of("a/1"), iterate(source));
+
+        source.setLargestFirst(false);
+        assertEquals(List.of("a/1"), iterate(source));
+    }
+
+    private List<String> iterate(final CatalogFoxmlObjectSource source) throws Exception {
+        final List<String> paths = new ArrayList<>();
+        final Iterator<FedoraObjectProcessor> iterator = source.iterator();
+        try {
+            while (iterator.hasNext()) {
+                try (final FedoraObjectProcessor processor = iterator.next()) {
+                    assertEquals("example:1", processor.getObjectInfo().getPid());
+                    paths.add(relative(processor.getObjectInfo().getFoxmlPath()));
+                }
+            }
+        } finally {
+            ((AutoCloseable) iterator).close();
+        }
+        return paths;
+    }
+
+    private String relative(final Path path) {
+        return root.toPath().toAbsolutePath().relativize(path.toAbsolutePath()).toString()
+                .replace(File.separatorChar, '/');
+    }
+}
@@ -21,6 +21,8 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+// the deprecated iterator is still shipped, so its behaviour is tested until it is removed
+@SuppressWarnings("deprecation")
 @RunWith(MockitoJUnitRunner.class)
 public class FoxmlDirectoryDFSIteratorTest {
 
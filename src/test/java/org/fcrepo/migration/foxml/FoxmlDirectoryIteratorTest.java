@@ -0,0 +1,108 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.RegexFileFilter;
+import org.fcrepo.migration.FedoraObjectProcessor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the order and error handling of FoxmlDirectoryIterator.
+ */
+public class FoxmlDirectoryIteratorTest {
+
+    private static final File FOXML = new File("src/test/resources/akubraFS/objectStore/info%3Afedora%2Fexample%3A1");
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void setup() throws IOException {
+        root = tempDir.newFolder("objects");
+        for (final String name : List.of("b/2", "b/1", "a/c/3", "a/.hidden", "0", "d/.ignored")) {
+            FileUtils.copyFile(FOXML, new File(root, name));
+        }
+    }
+
+    @Test
+    public void testSortedOrder() {
+        assertEquals(List.of("0", "a/c/3", "b/1", "b/2"), iterate(FoxmlDirectoryIterator.DEFAULT_PREFETCH));
+    }
+
+    @Test
+    public void testWithoutPrefetch() {
+        assertEquals(List.of("0", "a/c/3", "b/1", "b/2"), iterate(0));
+    }
+
+    @Test
+    public void testCloseBeforeEnd() {
+        final FoxmlDirectoryIterator iterator = newIterator(1);
+        iterator.next().close();
+        iterator.close();
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testMalformedObject() throws IOException {
+        Files.write(new File(root, "a/bad").toPath(), List.of("not xml"));
+        final List<String> files = new ArrayList<>();
+        int failures = 0;
+        try (final FoxmlDirectoryIterator iterator = newIterator(FoxmlDirectoryIterator.DEFAULT_PREFETCH)) {
+            while (iterator.hasNext()) {
+                try (final FedoraObjectProcessor processor = iterator.next()) {
+                    files.add(relative(processor.getObjectInfo().getFoxmlPath()));
+                } catch (final RuntimeException e) {
+                    failures++;
+                }
+            }
+        }
+        assertEquals(1, failures);
+        assertEquals(List.of("0", "a/c/3", "b/1", "b/2"), files);
+    }
+
+    private List<String> iterate(final int prefetch) {
+        final List<String> files = new ArrayList<>();
+        try (final FoxmlDirectoryIterator iterator = newIterator(prefetch)) {
+            while (iterator.hasNext()) {
+                try (final FedoraObjectProcessor processor = iterator.next()) {
+                    assertEquals("example:1", processor.getObjectInfo().getPid());
+                    files.add(relative(processor.getObjectInfo().getFoxmlPath()));
+                }
+            }
+        }
+        return files;
+    }
+
+    private String relative(final Path path) {
+        return root.toPath().relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private FoxmlDirectoryIterator newIterator(final int prefetch) {
+        final FoxmlDirectoryIterator iterator = new FoxmlDirectoryIterator(root, null, null, null,
+                new RegexFileFilter(Pattern.compile("^[^\\.].*$")));
+        iterator.setPrefetch(prefetch);
+        return iterator;
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.fcrepo.migration.DatastreamVersion;
+import org.fcrepo.migration.ObjectInfo;
+import org.fcrepo.migration.ObjectProperties;
+import org.fcrepo.migration.StreamingFedoraObjectHandler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests how the content of inline XML and binaryContent datastreams is read from FOXML.
+ */
+public class FoxmlInputStreamFedoraObjectProcessorTest {
+
+    private static final String INLINE_XML = "<dc:title xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+            + "Caf\u00e9 \u00fcber \u00c5ngstr\u00f6m</dc:title>";
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void testInlineXmlMatchesSource() throws Exception {
+        final byte[] foxml = foxml("UTF-8", xmlDatastream()).getBytes(UTF_8);
+        final var content = readContent(write(foxml), Integer.MAX_VALUE);
+
+        assertEquals(1, content.size());
+        assertArrayEquals(sourceBytes(foxml, "<foxml:xmlContent>", "</foxml:xmlContent>"),
+                content.get(0).bytes);
+    }
+
+    @Test
+    public void testInlineXmlInDeclaredEncoding() throws Exception {
+        final byte[] foxml = foxml("ISO-8859-1", xmlDatastream()).getBytes(ISO_8859_1);
+        final var content = readContent(write(foxml), Integer.MAX_VALUE);
+
+        assertEquals(1, content.size());
+        assertEquals(INLINE_XML, new String(content.get(0).bytes, UTF_8));
+    }
+
+    @Test
+    public void testInlineXmlAfterByteOrderMark() throws Exception {
+        final byte[] foxml = ("\uFEFF" + foxml("UTF-8", xmlDatastream())).getBytes(UTF_8);
+        final var content = readContent(write(foxml), Integer.MAX_VALUE);
+
+        assertEquals(1, content.size());
+        assertEquals(INLINE_XML, new String(content.get(0).bytes, UTF_8));
+    }
+
+    @Test
+    public void testBinaryContentBelowThresholdInMemory() throws Exception {
+        final byte[] data = randomBytes(1000);
+        final var content = readContent(write(foxml("UTF-8", binaryDatastream(data)).getBytes(UTF_8)),
+                data.length + 1);
+
+        assertEquals(1, content.size());
+        assertFalse(content.get(0).file.isPresent());
+        assertArrayEquals(data, content.get(0).bytes);
+    }
+
+    @Test
+    public void testBinaryContentAboveThresholdInTempFile() throws Exception {
+        final byte[] data = randomBytes(1000);
+        final var content = readContent(write(foxml("UTF-8", binaryDatastream(data)).getBytes(UTF_8)),
+                data.length - 1);
+
+        assertEquals(1, content.size());
+        assertTrue(content.get(0).file.isPresent());
+        assertArrayEquals(data, content.get(0).bytes);
+        assertFalse("temp file should be deleted once the object is complete",
+                content.get(0).file.get().exists());
+    }
+
+    private static String foxml(final String encoding, final String datastream) {
+        return "<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n"
+                + "<foxml:digitalObject VERSION=\"1.1\" PID=\"example:1\""
+                + " xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\">\n"
+                + "<foxml:objectProperties>\n"
+                + "<foxml:property NAME=\"info:fedora/fedora-system:def/model#state\" VALUE=\"Active\"/>\n"
+                + "<foxml:property NAME=\"info:fedora/fedora-system:def/model#label\" VALUE=\"Example\"/>\n"
+                + "</foxml:objectProperties>\n"
+                + datastream
+                + "</foxml:digitalObject>\n";
+    }
+
+    private static String xmlDatastream() {
+        return "<foxml:datastream ID=\"DC\" STATE=\"A\" CONTROL_GROUP=\"X\" VERSIONABLE=\"true\">\n"
+                + "<foxml:datastreamVersion ID=\"DC.0\" LABEL=\"Dublin Core\" CREATED=\"2015-01-27T19:07:33.120Z\""
+                + " MIMETYPE=\"text/xml\">\n"
+                + "<foxml:xmlContent>" + INLINE_XML + "</foxml:xmlContent>\n"
+                + "</foxml:datastreamVersion>\n"
+                + "</foxml:datastream>\n";
+    }
+
+    private static String binaryDatastream(final byte[] data) {
+        return "<foxml:datastream ID=\"DS1\" STATE=\"A\" CONTROL_GROUP=\"M\" VERSIONABLE=\"true\">\n"
+                + "<foxml:datastreamVersion ID=\"DS1.0\" LABEL=\"Data\" CREATED=\"2015-01-27T19:07:33.120Z\""
+                + " MIMETYPE=\"application/octet-stream\" SIZE=\"" + data.length + "\">\n"
+                + "<foxml:binaryContent>\n" + Base64.getMimeEncoder().encodeToString(data) + "\n"
+                + "</foxml:binaryContent>\n"
+                + "</foxml:datastreamVersion>\n"
+                + "</foxml:datastream>\n";
+    }
+
+    private static byte[] sourceBytes(final byte[] foxml, final String start, final String end) {
+        final String text = new String(foxml, ISO_8859_1);
+        final int from = text.indexOf(start) + start.length();
+        return text.substring(from, text.indexOf(end, from)).getBytes(ISO_8859_1);
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private File write(final byte[] foxml) throws IOException {
+        final File file = tempDir.newFile();
+        Files.write(file.toPath(), foxml);
+        return file;
+    }
+
+    private static List<Content> readContent(final File file, final int threshold)
+            throws XMLStreamException, IOException {
+        final var processor = new FoxmlInputStreamFedoraObjectProcessor(file, null, null, "localhost:8080");
+        processor.setBinaryContentThreshold(threshold);
+        final List<Content> content = new ArrayList<>();
+        try {
+            processor.processObject(new StreamingFedoraObjectHandler() {
+                @Override
+                public void beginObject(final ObjectInfo object) {
+                }
+
+                @Override
+                public void processObjectProperties(final ObjectProperties properties) {
+                }
+
+                @Override
+                public void processDatastreamVersion(final DatastreamVersion dsVersion) {
+                    try (final InputStream in = dsVersion.getContent()) {
+                        content.add(new Content(in.readAllBytes(), dsVersion.getFile()));
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void completeObject(final ObjectInfo object) {
+                }
+
+                @Override
+                public void abortObject(final ObjectInfo object) {
+                }
+            });
+        } finally {
+            processor.close();
+        }
+        return content;
+    }
+
+    private static class Content {
+
+        private final byte[] bytes;
+
+        private final Optional<File> file;
+
+        Content(final byte[] bytes, final Optional<File> file) {
+            this.bytes = bytes;
+            this.file = file;
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests estimating the size of an object from its FOXML.
+ */
+public class FoxmlSizeEstimatorTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void testManagedDatastreamSizes() throws Exception {
+        // only the managed datastream DS2 is stored outside of the FOXML
+        final Path foxml = new File("src/test/resources/akubraFS/objectStore/info%3Afedora%2Fexample%3A1").toPath();
+        assertEquals(Files.size(foxml) + 46168, FoxmlSizeEstimator.estimate(foxml));
+    }
+
+    @Test
+    public void testNotXml() throws Exception {
+        final Path file = tempDir.newFile("not-xml").toPath();
+        Files.write(file, List.of("not xml"));
+        assertEquals(Files.size(file), FoxmlSizeEstimator.estimate(file));
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests HttpClientURLFetcher against a local HTTP server.
+ */
+public class HttpClientURLFetcherTest {
+
+    private HttpServer server;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private HttpClientURLFetcher fetcher;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final CountDownLatch slow = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> respond(exchange, 200, "content"));
+        server.createContext("/missing", exchange -> respond(exchange, 404, "not found"));
+        // unavailable for the first request only
+        final AtomicInteger flaky = new AtomicInteger();
+        server.createContext("/flaky", exchange -> respond(exchange,
+                flaky.getAndIncrement() == 0 ? 503 : 200, "content"));
+        // sends the first half of its content, and the rest only once the test allows it
+        server.createContext("/slow", exchange -> {
+            requests.incrementAndGet();
+            final byte[] half = new byte[1 << 16];
+            exchange.sendResponseHeaders(200, 2L * half.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(half);
+                out.flush();
+                slow.await(10, TimeUnit.SECONDS);
+                out.write(half);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (fetcher != null) {
+            fetcher.close();
+        }
+        slow.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConnectionsAreReleased() throws IOException {
+        // a single connection, which must be returned to the pool after each fetch
+        fetcher = new HttpClientURLFetcher(1, 2000, 0);
+        for (int i = 0; i < 5; i++) {
+            try (final InputStream content = fetcher.getContentAtUrl(url("/ok"))) {
+                assertEquals("content", IOUtils.toString(content, UTF_8));
+            }
+        }
+        assertEquals(5, requests.get());
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws IOException {
+        // a single connection, which must be closed rather than drained, and then replaced
+        fetcher = new HttpClientURLFetcher(1, 5000, 0);
+        final InputStream content = fetcher.getContentAtUrl(url("/slow"));
+        assertEquals(0, content.read());
+        final long start = System.nanoTime();
+        content.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        try (final InputStream ok = fetcher.getContentAtUrl(url("/ok"))) {
+            assertEquals("content", IOUtils.toString(ok, UTF_8));
+        }
+    }
+
+    @Test
+    public void testRetry() throws IOException {
+        fetcher = new HttpClientURLFetcher(1, 2000, 2);
+        try (final InputStream content = fetcher.getContentAtUrl(url("/flaky"))) {
+            assertEquals("content", IOUtils.toString(content, UTF_8));
+        }
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testNotFound() throws IOException {
+        fetcher = new HttpClientURLFetcher(1, 2000, 2);
+        try {
+            fetcher.getContentAtUrl(url("/missing")).close();
+            fail("A missing resource should not be fetched");
+        } catch (final IOException e) {
+            // expected, without retrying
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testUnavailableHost() throws IOException {
+        final URL url = url("/ok");
+        server.stop(0);
+        fetcher = new HttpClientURLFetcher(1, 2000, 1);
+        try {
+            fetcher.getContentAtUrl(url).close();
+            fail("An unavailable host should fail the fetch");
+        } catch (final IOException e) {
+            // expected, after retrying
+        }
+    }
+
+    private URL url(final String path) throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        requests.incrementAndGet();
+        final byte[] bytes = body.getBytes(UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
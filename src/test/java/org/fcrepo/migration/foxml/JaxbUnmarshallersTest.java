@@ -0,0 +1,125 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlValue;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+
+/**
+ * Tests the shared contexts and pooled unmarshallers of {@link JaxbUnmarshallers}. Each test unmarshals its own
+ * type, so that it sees only its own pool.
+ */
+public class JaxbUnmarshallersTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void testContextIsShared() throws JAXBException {
+        assertSame(JaxbUnmarshallers.context(Shared.class), JaxbUnmarshallers.context(Shared.class));
+    }
+
+    @Test
+    public void testUnmarshallerIsReused() throws JAXBException {
+        assertEquals("one", unmarshal("one", Reused.class).text);
+        assertEquals(1, JaxbUnmarshallers.pooled(Reused.class));
+        assertEquals("two", unmarshal("two", Reused.class).text);
+        assertEquals(1, JaxbUnmarshallers.pooled(Reused.class));
+    }
+
+    @Test
+    public void testConcurrentBorrowAndReturn() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final String prefix = "thread" + i + "-";
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 100; j++) {
+                        assertEquals(prefix + j, unmarshal(prefix + j, Concurrent.class).text);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final int pooled = JaxbUnmarshallers.pooled(Concurrent.class);
+        assertTrue("expected between 1 and " + THREADS + " pooled, not " + pooled, pooled >= 1 && pooled <= THREADS);
+    }
+
+    @Test
+    public void testFailedUnmarshallerIsNotReturned() throws JAXBException {
+        try {
+            JaxbUnmarshallers.unmarshal(new StreamSource(new StringReader("<text>unclosed")), Failed.class);
+            fail("malformed XML should not unmarshal");
+        } catch (final JAXBException e) {
+            // expected
+        }
+        assertEquals(0, JaxbUnmarshallers.pooled(Failed.class));
+        assertEquals("after", unmarshal("after", Failed.class).text);
+        assertEquals(1, JaxbUnmarshallers.pooled(Failed.class));
+    }
+
+    private static <T> T unmarshal(final String text, final Class<T> type) throws JAXBException {
+        return JaxbUnmarshallers.unmarshal(new StreamSource(new StringReader("<text>" + text + "</text>")), type);
+    }
+
+    /**
+     * An element with only text.
+     */
+    public static class Text {
+        @XmlValue
+        public String text;
+    }
+
+    /**
+     * The type of {@link #testContextIsShared()}.
+     */
+    public static class Shared extends Text {
+    }
+
+    /**
+     * The type of {@link #testUnmarshallerIsReused()}.
+     */
+    public static class Reused extends Text {
+    }
+
+    /**
+     * The type of {@link #testConcurrentBorrowAndReturn()}.
+     */
+    public static class Concurrent extends Text {
+    }
+
+    /**
+     * The type of {@link #testFailedUnmarshallerIsNotReturned()}.
+     */
+    public static class Failed extends Text {
+    }
+
+}
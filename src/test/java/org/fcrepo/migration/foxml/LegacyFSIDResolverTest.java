@@ -7,6 +7,7 @@
 package org.fcrepo.migration.foxml;
 
 import org.apache.commons.io.FileUtils;
+import org.fcrepo.migration.foxml.DirectoryScanningIDResolver.IndexType;
 import org.junit.Assert;
 import org.junit.After;
 import org.junit.Before;
@@ -38,6 +39,51 @@ public class LegacyFSIDResolverTest {
         Assert.assertEquals("example:1+DS2+DS2.0", idResolver.getInternalIdForFile(new File("example_1+DS2+DS2.0")));
     }
 
+    @Test
+    public void testIndexNestedDirectories() throws IOException {
+        final File dsRoot = new File(tempDir, "datastreams");
+        for (int i = 0; i < 20; i++) {
+            final File dir = new File(dsRoot, "a" + (i % 4) + "/b" + (i % 3));
+            dir.mkdirs();
+            FileUtils.touch(new File(dir, "example_" + i + "+DS1+DS1.0"));
+        }
+        final LegacyFSIDResolver resolver = new LegacyFSIDResolver(new File(tempDir, "index"), dsRoot);
+        try {
+            for (int i = 0; i < 20; i++) {
+                final File file = resolver.resolveInternalID("example:" + i + "+DS1+DS1.0").getFile().get();
+                Assert.assertEquals("example_" + i + "+DS1+DS1.0", file.getName());
+                Assert.assertTrue(file.exists());
+            }
+        } finally {
+            resolver.close();
+        }
+    }
+
+    @Test
+    public void testRefreshIndex() throws IOException {
+        final File dsRoot = new File(tempDir, "datastreams");
+        final File indexDir = new File(tempDir, "index");
+        FileUtils.touch(new File(dsRoot, "a/example_1+DS1+DS1.0"));
+        FileUtils.touch(new File(dsRoot, "b/example_2+DS1+DS1.0"));
+        new LegacyFSIDResolver(indexDir, dsRoot, IndexType.HASH, true).close();
+
+        FileUtils.touch(new File(dsRoot, "a/example_3+DS1+DS1.0"));
+        FileUtils.deleteDirectory(new File(dsRoot, "b"));
+        final LegacyFSIDResolver resolver = new LegacyFSIDResolver(indexDir, dsRoot, IndexType.HASH, true);
+        try {
+            Assert.assertTrue(resolver.resolveInternalID("example:1+DS1+DS1.0").getFile().get().exists());
+            Assert.assertTrue(resolver.resolveInternalID("example:3+DS1+DS1.0").getFile().get().exists());
+            try {
+                resolver.resolveInternalID("example:2+DS1+DS1.0");
+                Assert.fail("Removed datastream should not resolve");
+            } catch (final RuntimeException e) {
+                // expected
+            }
+        } finally {
+            resolver.close();
+        }
+    }
+
     @After
     public void cleanup() throws IOException {
         FileUtils.deleteDirectory(tempDir);
@@ -0,0 +1,80 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests building and looking up ids in a MappedHashDatastreamIndex.
+ */
+public class MappedHashDatastreamIndexTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void testLookup() throws IOException {
+        final File indexDir = tempDir.newFolder("index");
+        assertFalse(MappedHashDatastreamIndex.exists(indexDir));
+
+        final String longPath = "/ds/" + StringUtils.repeat("x", 1000);
+        try (final DatastreamIndex.Writer writer = MappedHashDatastreamIndex.create(indexDir)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.add("example:" + i + "+DS1+DS1.0", "/ds/" + i);
+            }
+            writer.add("example:long+DS1+DS1.0", longPath);
+            writer.add("example:dup+DS1+DS1.0", "/ds/dup1");
+            writer.add("example:dup+DS1+DS1.0", "/ds/dup2");
+        }
+        assertTrue(MappedHashDatastreamIndex.exists(indexDir));
+
+        try (final DatastreamIndex index = MappedHashDatastreamIndex.open(indexDir)) {
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(List.of("/ds/" + i), index.lookup("example:" + i + "+DS1+DS1.0"));
+            }
+            assertEquals(List.of(longPath), index.lookup("example:long+DS1+DS1.0"));
+            assertEquals(2, index.lookup("example:dup+DS1+DS1.0").size());
+            assertTrue(index.lookup("example:missing+DS1+DS1.0").isEmpty());
+        }
+    }
+
+    @Test
+    public void testEmptyIndex() throws IOException {
+        final File indexDir = tempDir.newFolder("index");
+        MappedHashDatastreamIndex.create(indexDir).close();
+
+        try (final DatastreamIndex index = MappedHashDatastreamIndex.open(indexDir)) {
+            assertTrue(index.lookup("example:1+DS1+DS1.0").isEmpty());
+        }
+    }
+
+    @Test
+    public void testResolveWithHashIndex() throws IOException {
+        final File indexDir = tempDir.newFolder("index");
+        final var resolver = new AkubraFSIDResolver(indexDir, new File("src/test/resources/akubraFS/datastreamStore"),
+                DirectoryScanningIDResolver.IndexType.HASH);
+        try {
+            final var content = resolver.resolveInternalID("example:1+DS2+DS2.0");
+            assertTrue(content.getFile().isPresent());
+            assertEquals("info%3Afedora%2Fexample%3A1%2FDS2%2FDS2.0", content.getFile().get().getName());
+        } finally {
+            resolver.close();
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+
+import org.fcrepo.migration.FedoraObjectProcessor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests reading only the listed objects of Akubra and legacy object stores.
+ */
+public class PidListFoxmlObjectSourceTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private File pidFile;
+
+    @Before
+    public void setup() throws IOException {
+        pidFile = tempDir.newFile("pids.txt");
+        Files.write(pidFile.toPath(), List.of("example:1", "", "missing:1"));
+    }
+
+    @Test
+    public void testAkubra() throws Exception {
+        final var objectStore = new File("src/test/resources/akubraFS/objectStore");
+        assertListedObjects(new AkubraHashPathIDResolver(objectStore),
+                new File(objectStore, "info%3Afedora%2Fexample%3A1"));
+    }
+
+    @Test
+    public void testLegacy() throws Exception {
+        final var objectStore = new File("src/test/resources/legacyFS/objects");
+        final var objectResolver = new LegacyFSIDResolver(tempDir.newFolder("object-index"), objectStore);
+        try {
+            assertListedObjects(objectResolver, new File(objectStore, "2015/0430/16/01/example_1"));
+        } finally {
+            objectResolver.close();
+        }
+    }
+
+    private void assertListedObjects(final InternalIDResolver objectResolver, final File foxml) throws Exception {
+        final var source = new PidListFoxmlObjectSource(pidFile, objectResolver, null, "localhost:8080");
+        final Iterator<FedoraObjectProcessor> iterator = source.iterator();
+        try {
+            assertTrue(iterator.hasNext());
+            try (final FedoraObjectProcessor processor = iterator.next()) {
+                assertEquals("example:1", processor.getObjectInfo().getPid());
+                assertEquals(foxml.getAbsoluteFile().toPath(),
+                        processor.getObjectInfo().getFoxmlPath().toAbsolutePath());
+            }
+
+            assertTrue(iterator.hasNext());
+            try {
+                iterator.next().close();
+                fail("missing:1 should not be found");
+            } catch (final RuntimeException e) {
+                assertTrue(e.getMessage().contains("missing:1"));
+            }
+            assertFalse(iterator.hasNext());
+        } finally {
+            ((AutoCloseable) iterator).close();
+        }
+    }
+}
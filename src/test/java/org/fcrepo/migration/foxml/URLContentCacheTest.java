@@ -0,0 +1,186 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.foxml;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests URLContentCache, on its own and through HttpClientURLFetcher.
+ */
+public class URLContentCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private final AtomicInteger fetched = new AtomicInteger();
+
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tempFolder.newFolder("url-cache").toPath();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/etag", this::respond);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRepeatedFetchIsServedFromCache() throws IOException {
+        try (final URLContentCache cache = new URLContentCache(dir, 1024);
+             final HttpClientURLFetcher fetcher = fetcher(cache)) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals("content", fetch(fetcher, url("/etag")));
+            }
+        }
+        assertEquals(1, fetched.get());
+        assertEquals(0, notModified.get());
+    }
+
+    @Test
+    public void testRevalidatedByLaterRun() throws IOException {
+        try (final URLContentCache cache = new URLContentCache(dir, 1024);
+             final HttpClientURLFetcher fetcher = fetcher(cache)) {
+            assertEquals("content", fetch(fetcher, url("/etag")));
+        }
+        try (final URLContentCache cache = new URLContentCache(dir, 1024);
+             final HttpClientURLFetcher fetcher = fetcher(cache)) {
+            assertEquals("content", fetch(fetcher, url("/etag")));
+            assertEquals("content", fetch(fetcher, url("/etag")));
+        }
+        assertEquals(1, fetched.get());
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    public void testIncompleteReadIsNotCached() throws IOException {
+        final URL url = new URL("http://example.org/a");
+        try (final URLContentCache cache = new URLContentCache(dir, 1024)) {
+            try (final InputStream content = cache.store(url, "\"a\"", null, stream("content"))) {
+                content.read();
+            }
+            assertNull(cache.get(url));
+            assertEquals(0, blobs());
+        }
+    }
+
+    @Test
+    public void testSameContentIsStoredOnce() throws IOException {
+        try (final URLContentCache cache = new URLContentCache(dir, 1024)) {
+            store(cache, new URL("http://example.org/a"), "content");
+            store(cache, new URL("http://example.org/b"), "content");
+            assertEquals(1, blobs());
+            store(cache, new URL("http://example.org/a"), "changed");
+            assertEquals(2, blobs());
+            assertEquals("content", IOUtils.toString(cache.openValidated(new URL("http://example.org/b")), UTF_8));
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        final URL a = new URL("http://example.org/a");
+        final URL b = new URL("http://example.org/b");
+        final URL c = new URL("http://example.org/c");
+        try (final URLContentCache cache = new URLContentCache(dir, 10)) {
+            store(cache, a, "aaaa");
+            store(cache, b, "bbbb");
+            cache.openValidated(a).close();
+            store(cache, c, "cccc");
+            assertNotNull(cache.get(a));
+            assertNull(cache.get(b));
+            assertNotNull(cache.get(c));
+            assertEquals(2, blobs());
+            // larger than the cache
+            store(cache, new URL("http://example.org/d"), "ddddddddddd");
+            assertNull(cache.get(new URL("http://example.org/d")));
+        }
+        try (final URLContentCache cache = new URLContentCache(dir, 10)) {
+            assertNotNull(cache.get(a));
+            assertNull(cache.openValidated(a));
+        }
+    }
+
+    private void store(final URLContentCache cache, final URL url, final String content) throws IOException {
+        try (final InputStream in = cache.store(url, "\"" + content + "\"", null, stream(content))) {
+            IOUtils.toByteArray(in);
+        }
+    }
+
+    private long blobs() throws IOException {
+        try (final Stream<Path> files = Files.walk(dir.resolve("blobs"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static InputStream stream(final String content) {
+        return new ByteArrayInputStream(content.getBytes(UTF_8));
+    }
+
+    private static HttpClientURLFetcher fetcher(final URLContentCache cache) {
+        final HttpClientURLFetcher fetcher = new HttpClientURLFetcher(1, 2000, 0);
+        fetcher.setCache(cache);
+        return fetcher;
+    }
+
+    private static String fetch(final HttpClientURLFetcher fetcher, final URL url) throws IOException {
+        try (final InputStream content = fetcher.getContentAtUrl(url)) {
+            return IOUtils.toString(content, UTF_8);
+        }
+    }
+
+    private URL url(final String path) throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private void respond(final HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        fetched.incrementAndGet();
+        final byte[] bytes = "content".getBytes(UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (final OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
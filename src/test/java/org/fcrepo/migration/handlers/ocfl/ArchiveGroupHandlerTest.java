@@ -47,6 +47,8 @@ import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.fasterxml.jackson.databind.SerializationFeature.WRITE_DATES_AS_TIMESTAMPS;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -58,6 +60,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 
@@ -242,6 +245,131 @@ public class ArchiveGroupHandlerTest {
         verifyDescHeaders(ds2Session, ocflObjectId, dsId2, "v2");
     }
 
+    @Test
+    public void processObjectMultipleVersionsAtomicParallelDatastreams() throws IOException {
+        resourceMigrationType = ResourceMigrationType.ATOMIC;
+        final var executor = Executors.newFixedThreadPool(4);
+        try {
+            final var handler = createHandler(MigrationType.FEDORA_OCFL, false, true, false, executor);
+
+            final var pid = "obj2";
+            final var dsId1 = "ds3";
+            final var dsId2 = "ds4";
+            final var dsId3 = "ds5";
+
+            final var ds1V1 = datastreamVersion(dsId1, true, MANAGED, "application/xml", "<h1>hello</h1>", null);
+            final var ds2V1 = datastreamVersion(dsId2, true, MANAGED, "text/plain", "goodbye", null);
+            final var ds3V1 = datastreamVersion(dsId3, true, INLINE, "application/xml", "<xml>inline</xml>", null);
+
+            final var ds2V2 = datastreamVersion(dsId2, false, MANAGED, "text/plain", "fedora", null);
+
+            handler.processObjectVersions(List.of(
+                    objectVersionReference(pid, true, List.of(ds1V1, ds2V1, ds3V1)),
+                    objectVersionReference(pid, false, List.of(ds2V2))
+            ), new DefaultObjectInfo(pid, pid, Files.createTempFile(tempDir.getRoot().toPath(), "foxml", "xml")));
+
+            final var ocflObjectId = addPrefix(pid);
+            final var objectSession = sessionFactory.newSession(ocflObjectId);
+            final var ds1Session = sessionFactory.newSession(resourceId(ocflObjectId, dsId1));
+            final var ds2Session = sessionFactory.newSession(resourceId(ocflObjectId, dsId2));
+            final var ds3Session = sessionFactory.newSession(resourceId(ocflObjectId, dsId3));
+
+            verifyObjectRdf(contentToString(objectSession, ocflObjectId));
+            verifyObjectHeaders(objectSession, ocflObjectId);
+
+            verifyBinary(contentToString(ds1Session, ocflObjectId, dsId1), ds1V1);
+            verifyHeaders(ds1Session, ocflObjectId, dsId1, ds1V1);
+            verifyDescRdf(ds1Session, ocflObjectId, dsId1, ds1V1);
+            verifyDescHeaders(ds1Session, ocflObjectId, dsId1);
+
+            verifyBinary(contentToString(ds3Session, ocflObjectId, dsId3), ds3V1);
+            verifyDescRdf(ds3Session, ocflObjectId, dsId3, ds3V1);
+
+            verifyBinary(contentVersionToString(ds2Session, ocflObjectId, dsId2, "v1"), ds2V1);
+            verifyHeaders(ds2Session, ocflObjectId, dsId2, ds2V1, "v1");
+            verifyDescRdf(ds2Session, ocflObjectId, dsId2, ds2V1, "v1");
+
+            verifyBinary(contentVersionToString(ds2Session, ocflObjectId, dsId2, "v2"), ds2V2);
+            verifyHeaders(ds2Session, ocflObjectId, dsId2, ds2V2, "v2");
+            verifyDescRdf(ds2Session, ocflObjectId, dsId2, ds2V2, "v2");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedParallelDatastreamFailsObject() throws IOException {
+        resourceMigrationType = ResourceMigrationType.ATOMIC;
+        final var executor = Executors.newFixedThreadPool(4);
+        try {
+            final var handler = createHandler(MigrationType.FEDORA_OCFL, false, true, false, executor);
+
+            final var pid = "obj3";
+            final var dsId1 = "ds1";
+            final var dsId2 = "ds2";
+
+            final var ds1 = datastreamVersion(dsId1, true, MANAGED, "text/plain", "hello", null);
+            final var ds2 = datastreamVersion(dsId2, true, MANAGED, "text/plain", "goodbye", null);
+            final var badDigest = contentDigest("something else");
+            when(ds2.getContentDigest()).thenReturn(badDigest);
+
+            try {
+                handler.processObjectVersions(List.of(
+                        objectVersionReference(pid, true, List.of(ds1, ds2))
+                ), new DefaultObjectInfo(pid, pid,
+                        Files.createTempFile(tempDir.getRoot().toPath(), "foxml", "xml")));
+                fail("processing should fail when a datastream's digest doesn't match");
+            } catch (final RuntimeException e) {
+                // expected
+            }
+
+            final var ocflObjectId = addPrefix(pid);
+            assertFalse("object should not be committed", ocflRepo.containsObject(ocflObjectId));
+            assertFalse("datastream should not be committed",
+                    ocflRepo.containsObject(resourceId(ocflObjectId, dsId1)));
+            assertFalse("datastream should not be committed",
+                    ocflRepo.containsObject(resourceId(ocflObjectId, dsId2)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureOnHandlerThreadAbortsParallelDatastreams() throws IOException {
+        resourceMigrationType = ResourceMigrationType.ATOMIC;
+        final var executor = Executors.newFixedThreadPool(4);
+        try {
+            final var handler = createHandler(MigrationType.FEDORA_OCFL, false, true, false, executor);
+
+            final var pid = "obj4";
+            final var dsId1 = "ds1";
+
+            final var ds1 = datastreamVersion(dsId1, true, MANAGED, "text/plain", "hello", null);
+            // fails while the handler parses it, after the content of ds1 was handed to the executor
+            final var dc = datastreamVersion("DC", true, INLINE, "text/xml", "not xml", null);
+
+            try {
+                handler.processObjectVersions(List.of(
+                        objectVersionReference(pid, true, List.of(ds1, dc))
+                ), new DefaultObjectInfo(pid, pid,
+                        Files.createTempFile(tempDir.getRoot().toPath(), "foxml", "xml")));
+                fail("processing should fail when the DC can't be parsed");
+            } catch (final RuntimeException e) {
+                // expected
+            }
+
+            final var ocflObjectId = addPrefix(pid);
+            assertFalse("object should not be committed", ocflRepo.containsObject(ocflObjectId));
+            assertFalse("datastream should not be committed",
+                    ocflRepo.containsObject(resourceId(ocflObjectId, dsId1)));
+            try (final var staged = Files.list(staging)) {
+                assertEquals("sessions should be aborted", 0, staged.count());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void updateFilenameFromRelsInt() throws IOException {
         final var handler = createHandler(MigrationType.FEDORA_OCFL, false, false, false);
@@ -1242,14 +1370,23 @@ public class ArchiveGroupHandlerTest {
                                               final boolean addExtensions,
                                               final boolean deleteInactive,
                                               final boolean headOnly) {
+        return createHandler(migrationType, addExtensions, deleteInactive, headOnly, null);
+    }
+
+    private ArchiveGroupHandler createHandler(final MigrationType migrationType,
+                                              final boolean addExtensions,
+                                              final boolean deleteInactive,
+                                              final boolean headOnly,
+                                              final ExecutorService datastreamExecutor) {
         if (migrationType == MigrationType.PLAIN_OCFL) {
             return new ArchiveGroupHandler(plainSessionFactory, migrationType, resourceMigrationType,
                                            addExtensions, deleteInactive,
-                                           false, USER, "info:fedora/", headOnly, false, false);
+                                           false, USER, "info:fedora/", headOnly, false, false,
+                                           datastreamExecutor);
         } else {
             return new ArchiveGroupHandler(sessionFactory, migrationType, resourceMigrationType,
                                            addExtensions, deleteInactive, false, USER,
-                                           "info:fedora/", headOnly, false, false);
+                                           "info:fedora/", headOnly, false, false, datastreamExecutor);
         }
     }
 
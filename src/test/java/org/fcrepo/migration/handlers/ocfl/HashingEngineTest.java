@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the digests computed by HashingEngine and its choice of providers.
+ */
+public class HashingEngineTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private static final int BUFFER_SIZE = 1024;
+
+    @Test
+    public void testPipelinedDigests() throws IOException, NoSuchAlgorithmException {
+        final HashingEngine engine = new HashingEngine(null, 0, BUFFER_SIZE);
+        final Random random = new Random(1);
+        for (final int size : new int[] {0, 1, BUFFER_SIZE - 1, BUFFER_SIZE, BUFFER_SIZE + 1, 5 * BUFFER_SIZE + 7}) {
+            final byte[] content = new byte[size];
+            random.nextBytes(content);
+            final Path file = tempDir.newFile().toPath();
+            Files.write(file, content);
+            final Map<String, String> digests = engine.digestFile(file, digests(engine));
+            assertEquals(DigestUtils.md5Hex(content), digests.get("md5"));
+            assertEquals(DigestUtils.sha512Hex(content), digests.get("sha512"));
+        }
+    }
+
+    @Test
+    public void testMappedDigestsBelowThreshold() throws IOException, NoSuchAlgorithmException {
+        final HashingEngine engine = new HashingEngine(null, Long.MAX_VALUE, BUFFER_SIZE);
+        final byte[] content = new byte[3 * BUFFER_SIZE];
+        new Random(2).nextBytes(content);
+        final Path file = tempDir.newFile().toPath();
+        Files.write(file, content);
+        final Map<String, String> digests = engine.digestFile(file, digests(engine));
+        assertEquals(DigestUtils.md5Hex(content), digests.get("md5"));
+        assertEquals(DigestUtils.sha512Hex(content), digests.get("sha512"));
+    }
+
+    @Test
+    public void testNamedProvider() throws NoSuchAlgorithmException {
+        final HashingEngine engine = new HashingEngine("SUN", 0, BUFFER_SIZE);
+        assertEquals("SUN", engine.newDigest("SHA-512").getProvider().getName());
+        assertEquals("SUN", engine.newDigest("md5").getProvider().getName());
+    }
+
+    @Test
+    public void testAlgorithmNotImplementedByNamedProvider() throws NoSuchAlgorithmException {
+        final HashingEngine engine = new HashingEngine("SunJCE", 0, BUFFER_SIZE);
+        assertEquals("SHA-256", engine.newDigest("SHA-256").getAlgorithm());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownProvider() {
+        new HashingEngine("NoSuchProvider", 0, BUFFER_SIZE);
+    }
+
+    @Test(expected = NoSuchAlgorithmException.class)
+    public void testUnknownAlgorithm() throws NoSuchAlgorithmException {
+        HashingEngine.getDefault().newDigest("NO-SUCH-DIGEST");
+    }
+
+    private static Map<String, MessageDigest> digests(final HashingEngine engine) throws NoSuchAlgorithmException {
+        final Map<String, MessageDigest> digests = new HashMap<>();
+        digests.put("md5", engine.newDigest("MD5"));
+        digests.put("sha512", engine.newDigest("SHA-512"));
+        return digests;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the detection and caching of datastream mime types.
+ */
+public class MimeTypeDetectorTest {
+
+    private static final String PDF = "%PDF-1.4\n1 0 obj\n<< >>\nendobj\n";
+
+    private final MimeTypeDetector detector = MimeTypeDetector.getInstance();
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void testDetectRewindsContent() throws Exception {
+        final byte[] bytes = PDF.getBytes(UTF_8);
+        try (final TikaInputStream content = MimeTypeDetector.markable(new ByteArrayInputStream(bytes))) {
+            assertEquals("application/pdf", detector.detect("PDF-TEST", null, content));
+            assertArrayEquals(bytes, IOUtils.toByteArray(content));
+        }
+    }
+
+    @Test
+    public void testCachedByIdAndFormat() throws Exception {
+        final String format = "info:test/format/" + System.nanoTime();
+        assertNull(detector.cached("OBJ", format));
+        detector.detect("OBJ", format, MimeTypeDetector.markable(new ByteArrayInputStream(PDF.getBytes(UTF_8))));
+        assertEquals("application/pdf", detector.cached("OBJ", format));
+        assertNull(detector.cached("OTHER", format));
+    }
+
+    @Test
+    public void testNotCachedWithoutFormat() throws Exception {
+        detector.detect("NO-FORMAT", null, MimeTypeDetector.markable(new ByteArrayInputStream(PDF.getBytes(UTF_8))));
+        assertNull(detector.cached("NO-FORMAT", null));
+        assertNull(detector.cached("NO-FORMAT", ""));
+    }
+
+    @Test
+    public void testOoxmlDetectedAsFromTikaInputStream() throws Exception {
+        final byte[] bytes = docx();
+        final var meta = new Metadata();
+        meta.set(Metadata.RESOURCE_NAME_KEY, "DOCX-TEST");
+        final String expected;
+        try (final InputStream content = TikaInputStream.get(new ByteArrayInputStream(bytes))) {
+            expected = new TikaConfig().getDetector().detect(content, meta).toString();
+        }
+
+        try (final TikaInputStream content = MimeTypeDetector.markable(new ByteArrayInputStream(bytes))) {
+            assertEquals(expected, detector.detect("DOCX-TEST", null, content));
+            assertTrue("container content should be spooled to a file", content.hasFile());
+            assertArrayEquals(bytes, IOUtils.toByteArray(content));
+        }
+
+        final Path file = tempDir.newFile().toPath();
+        Files.write(file, bytes);
+        try (final TikaInputStream content = MimeTypeDetector.markable(file)) {
+            assertEquals(expected, detector.detect("DOCX-TEST", null, content));
+            assertArrayEquals(bytes, IOUtils.toByteArray(content));
+        }
+    }
+
+    @Test
+    public void testMarkable() throws Exception {
+        final InputStream markable = TikaInputStream.get(new ByteArrayInputStream(new byte[0]));
+        assertSame(markable, MimeTypeDetector.markable(markable));
+    }
+
+    /**
+     * @return a minimal word processing document in the Office Open XML format
+     */
+    private static byte[] docx() throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        try (final ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\""
+                    + " ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/word/document.xml\" ContentType=\""
+                    + "application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>"
+                    + "</Types>").getBytes(UTF_8));
+            zip.putNextEntry(new ZipEntry("_rels/.rels"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Target=\"word/document.xml\" Type=\""
+                    + "http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\"/>"
+                    + "</Relationships>").getBytes(UTF_8));
+            zip.putNextEntry(new ZipEntry("word/document.xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\">"
+                    + "<w:body><w:p><w:r><w:t>Example</w:t></w:r></w:p></w:body></w:document>").getBytes(UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
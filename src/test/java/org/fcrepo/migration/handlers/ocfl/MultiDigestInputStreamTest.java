@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests computing several digests in one pass over the content.
+ */
+public class MultiDigestInputStreamTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private static final String CONTENT = "the content of a datastream";
+
+    @Test
+    public void testDigestsInOnePass() throws IOException {
+        final var stream = new MultiDigestInputStream(new ByteArrayInputStream(CONTENT.getBytes(UTF_8)), digests());
+        assertEquals(CONTENT, IOUtils.toString(stream, UTF_8));
+        assertDigests(stream.hexDigests());
+    }
+
+    @Test
+    public void testSkippedContentIsDigested() throws IOException {
+        final var stream = new MultiDigestInputStream(new ByteArrayInputStream(CONTENT.getBytes(UTF_8)), digests());
+        assertEquals(4, stream.skip(4));
+        IOUtils.toByteArray(stream);
+        assertDigests(stream.hexDigests());
+    }
+
+    @Test
+    public void testDigestFile() throws IOException {
+        final Path file = tempDir.newFile().toPath();
+        Files.writeString(file, CONTENT);
+        assertDigests(MultiDigestInputStream.digestFile(file, digests()));
+    }
+
+    @Test
+    public void testDigestEmptyFile() throws IOException {
+        final Path file = tempDir.newFile().toPath();
+        final Map<String, String> digests = MultiDigestInputStream.digestFile(file, digests());
+        assertEquals(DigestUtils.md5Hex(""), digests.get("md5"));
+        assertEquals(DigestUtils.sha512Hex(""), digests.get("sha512"));
+    }
+
+    private static Map<String, MessageDigest> digests() {
+        final Map<String, MessageDigest> digests = new HashMap<>();
+        digests.put("md5", DigestUtils.getMd5Digest());
+        digests.put("sha512", DigestUtils.getSha512Digest());
+        return digests;
+    }
+
+    private static void assertDigests(final Map<String, String> digests) {
+        assertEquals(DigestUtils.md5Hex(CONTENT), digests.get("md5"));
+        assertEquals(DigestUtils.sha512Hex(CONTENT), digests.get("sha512"));
+    }
+}
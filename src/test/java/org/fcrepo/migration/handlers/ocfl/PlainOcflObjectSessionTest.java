@@ -16,12 +16,14 @@
 
 package org.fcrepo.migration.handlers.ocfl;
 
+import io.ocfl.api.DigestAlgorithmRegistry;
 import io.ocfl.api.MutableOcflRepository;
 import io.ocfl.api.model.ObjectVersionId;
 import io.ocfl.core.OcflRepositoryBuilder;
 import io.ocfl.core.extension.storage.layout.config.HashedNTupleLayoutConfig;
 import io.ocfl.core.path.mapper.LogicalPathMappers;
 import io.ocfl.core.storage.OcflStorageBuilder;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.fcrepo.storage.ocfl.InteractionModel;
@@ -35,11 +37,16 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author pwinckles
@@ -155,6 +162,102 @@ public class PlainOcflObjectSessionTest {
         assertTrue(Files.notExists(staging.resolve(session.sessionId())));
     }
 
+    @Test
+    public void stageLinkedFile() throws IOException {
+        final var source = tempDir.newFile("source").toPath();
+        Files.writeString(source, "linked");
+
+        ((PlainOcflObjectSessionFactory) plainSessionFactory).setStagingMode(StagingMode.LINK);
+        final var session = newSession();
+        final var headers = binary(AG_ID + "/bar", "").getHeaders();
+        session.writeResource(headers, new SourceFileInputStream(source, null));
+
+        if (!SystemUtils.IS_OS_WINDOWS) {
+            // the staged file is the source file
+            assertEquals(2, Files.getAttribute(source, "unix:nlink"));
+        }
+
+        session.commit();
+
+        assertEquals("linked",
+                IOUtils.toString(ocflRepo.getObject(ObjectVersionId.head(AG_ID)).getFile("bar").getStream(), UTF_8));
+        assertEquals("linked", Files.readString(source));
+    }
+
+    @Test
+    public void stageTransferredFile() throws IOException {
+        final var source = tempDir.newFile("source").toPath();
+        Files.writeString(source, "transferred");
+
+        ((PlainOcflObjectSessionFactory) plainSessionFactory).setStagingMode(StagingMode.TRANSFER);
+        final var session = newSession();
+        final var headers = binary(AG_ID + "/bar", "").getHeaders();
+        session.writeResource(headers, new SourceFileInputStream(source, null));
+        session.commit();
+
+        assertEquals("transferred",
+                IOUtils.toString(ocflRepo.getObject(ObjectVersionId.head(AG_ID)).getFile("bar").getStream(), UTF_8));
+        if (!SystemUtils.IS_OS_WINDOWS) {
+            assertEquals(1, Files.getAttribute(source, "unix:nlink"));
+        }
+    }
+
+    @Test
+    public void digestWhileStaging() throws IOException {
+        ((PlainOcflObjectSessionFactory) plainSessionFactory).setDigestAlgorithm(DigestAlgorithmRegistry.sha512);
+        final var session = newSession();
+        final var headers = headers(AG_ID + "/bar");
+        headers.withInteractionModel(InteractionModel.NON_RDF.getUri());
+        headers.withDigests(List.of(URI.create("urn:md5:" + DigestUtils.md5Hex("test"))));
+        session.writeResource(headers.build(), IOUtils.toInputStream("test", UTF_8));
+        session.commit();
+
+        assertEquals("test",
+                IOUtils.toString(ocflRepo.getObject(ObjectVersionId.head(AG_ID)).getFile("bar").getStream(), UTF_8));
+        // the inventory digest computed while staging is the digest of the content
+        assertFalse(ocflRepo.validateObject(AG_ID, true).hasErrors());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void digestMismatchWhileStaging() {
+        ((PlainOcflObjectSessionFactory) plainSessionFactory).setDigestAlgorithm(DigestAlgorithmRegistry.sha512);
+        final var session = newSession();
+        final var headers = headers(AG_ID + "/bar");
+        headers.withInteractionModel(InteractionModel.NON_RDF.getUri());
+        headers.withDigests(List.of(URI.create("urn:md5:" + DigestUtils.md5Hex("other"))));
+        session.writeResource(headers.build(), IOUtils.toInputStream("test", UTF_8));
+        session.commit();
+    }
+
+    @Test
+    public void digestMismatchFailsWrite() {
+        final var session = newSession();
+        final var headers = headers(AG_ID + "/bar");
+        headers.withInteractionModel(InteractionModel.NON_RDF.getUri());
+        headers.withDigests(List.of(URI.create("urn:md5:" + DigestUtils.md5Hex("other"))));
+        try {
+            session.writeResource(headers.build(), IOUtils.toInputStream("test", UTF_8));
+            fail("content that doesn't match its Fedora 3 digest should not be staged");
+        } catch (final RuntimeException e) {
+            // expected, before the session is committed
+        }
+        session.abort();
+        assertFalse(ocflRepo.containsObject(AG_ID));
+    }
+
+    @Test
+    public void validatedWithoutDigestAlgorithm() throws IOException {
+        final var session = newSession();
+        final var headers = headers(AG_ID + "/bar");
+        headers.withInteractionModel(InteractionModel.NON_RDF.getUri());
+        headers.withDigests(List.of(URI.create("urn:sha-1:" + DigestUtils.sha1Hex("test"))));
+        session.writeResource(headers.build(), IOUtils.toInputStream("test", UTF_8));
+        session.commit();
+
+        assertEquals("test",
+                IOUtils.toString(ocflRepo.getObject(ObjectVersionId.head(AG_ID)).getFile("bar").getStream(), UTF_8));
+    }
+
     private void write(final ResourceContent content, final OcflObjectSession session) {
         session.writeResource(content.getHeaders(), content.getContentStream().get());
     }
@@ -0,0 +1,108 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.handlers.ocfl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Test;
+
+/**
+ * Tests that a TripleBuffer writes the same triples as a model.
+ */
+public class TripleBufferTest {
+
+    private static final String SUBJECT = "info:fedora/obj1/ds1";
+
+    private static final String RELS_INT = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"" +
+            " xmlns:example=\"http://example.com/#\">\n" +
+            "\t<rdf:Description rdf:about=\"info:fedora/obj1/ds1\">\n" +
+            "\t\t<example:animal>cat</example:animal>\n" +
+            "\t\t<example:quote>a \"quoted\"\n\tline, été</example:quote>\n" +
+            "\t\t<example:label xml:lang=\"en\">label</example:label>\n" +
+            "\t</rdf:Description>\n" +
+            "</rdf:RDF>";
+
+    @Test
+    public void testLinesMatchModel() throws IOException {
+        final var buffer = new TripleBuffer();
+        buffer.addStringLiteral(SUBJECT, "http://purl.org/dc/terms/title", "a \"title\"\nwith \\ and é");
+        buffer.addStringLiteral(SUBJECT, "http://purl.org/dc/terms/identifier", null);
+        buffer.addDateLiteral(SUBJECT, "http://fedora.info/definitions/v4/repository#created",
+                "2015-01-27T19:07:33.120Z");
+        buffer.addLongLiteral(SUBJECT, "http://www.loc.gov/premis/rdf/v1#size", 1234);
+        buffer.addLongLiteral(SUBJECT, "http://www.loc.gov/premis/rdf/v1#size", -1);
+
+        final Model model = ModelFactory.createDefaultModel();
+        model.add(model.createResource(SUBJECT), model.createProperty("http://purl.org/dc/terms/title"),
+                "a \"title\"\nwith \\ and é");
+        model.addLiteral(model.createResource(SUBJECT),
+                model.createProperty("http://fedora.info/definitions/v4/repository#created"),
+                model.createTypedLiteral("2015-01-27T19:07:33.120Z", XSDDatatype.XSDdateTime));
+        model.addLiteral(model.createResource(SUBJECT), model.createProperty("http://www.loc.gov/premis/rdf/v1#size"),
+                model.createTypedLiteral(1234L, XSDDatatype.XSDlong));
+
+        assertEquals(lines(model), lines(TripleBuffer.toNTriples(buffer)));
+    }
+
+    @Test
+    public void testParsedLinesMatchModel() throws IOException {
+        final var buffer = TripleBuffer.parse(stream(RELS_INT), Lang.RDFXML);
+        final Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, stream(RELS_INT), Lang.RDFXML);
+        assertEquals(lines(model), lines(TripleBuffer.toNTriples(buffer)));
+    }
+
+    @Test
+    public void testTriplesAreWrittenOnce() throws IOException {
+        final var content = new TripleBuffer();
+        content.addStringLiteral(SUBJECT, "http://purl.org/dc/terms/title", "title");
+        content.addStringLiteral(SUBJECT, "http://purl.org/dc/terms/title", "title");
+        final var dc = new TripleBuffer();
+        dc.add(Triple.create(NodeFactory.createURI(SUBJECT), NodeFactory.createURI("http://purl.org/dc/terms/title"),
+                NodeFactory.createLiteral("title", XSDDatatype.XSDstring)));
+        dc.addStringLiteral(SUBJECT, "http://purl.org/dc/terms/creator", "creator");
+
+        final String written = IOUtils.toString(TripleBuffer.toNTriples(content, null, dc), UTF_8);
+        assertEquals(2, written.split("\n").length);
+    }
+
+    @Test
+    public void testNoTriples() throws IOException {
+        assertEquals("", IOUtils.toString(TripleBuffer.toNTriples(new TripleBuffer(), null), UTF_8));
+    }
+
+    private static Set<String> lines(final Model model) {
+        final var output = new ByteArrayOutputStream();
+        model.write(output, Lang.NTRIPLES.getName());
+        return new TreeSet<>(Arrays.asList(output.toString(UTF_8).split("\n")));
+    }
+
+    private static Set<String> lines(final InputStream nTriples) throws IOException {
+        return new TreeSet<>(Arrays.asList(IOUtils.toString(nTriples, UTF_8).split("\n")));
+    }
+
+    private static InputStream stream(final String content) {
+        return new ByteArrayInputStream(content.getBytes(UTF_8));
+    }
+}
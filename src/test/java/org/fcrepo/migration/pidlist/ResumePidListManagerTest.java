@@ -9,11 +9,21 @@ package org.fcrepo.migration.pidlist;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Unit test class for ResumePidListManager
@@ -28,6 +38,9 @@ public class ResumePidListManagerTest {
 
     private List<String> pidList;
 
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
     @Before
     public void setUp() {
         // Test PIDs
@@ -53,6 +66,8 @@ public class ResumePidListManagerTest {
     public void acceptIncrementalRuns() {
         Assert.assertTrue("pid:1 should be accepted", manager.accept("pid:1"));
         Assert.assertTrue("pid:2 should be accepted", manager.accept("pid:2"));
+        manager.completed("pid:1");
+        manager.completed("pid:2");
 
         // Simulate stopping the migration process... and start over
         manager = new ResumePidListManager(new File(testDir), false);
@@ -62,6 +77,8 @@ public class ResumePidListManagerTest {
         // ..however, unprocessed PIDs should be "accepted"
         Assert.assertTrue("pid:3 should be accepted", manager.accept("pid:3"));
         Assert.assertTrue("pid:4 should be accepted", manager.accept("pid:4"));
+        manager.completed("pid:4");
+        manager.completed("pid:3");
 
         // Starting over again... no PIDs should be accepted
         manager = new ResumePidListManager(new File(testDir), false);
@@ -72,6 +89,8 @@ public class ResumePidListManagerTest {
     public void acceptAll() {
         Assert.assertTrue("pid:1 should be accepted", manager.accept("pid:1"));
         Assert.assertTrue("pid:2 should be accepted", manager.accept("pid:2"));
+        manager.completed("pid:1");
+        manager.completed("pid:2");
 
         // Simulate stopping the migration process... and start over - but accept all
         manager = new ResumePidListManager(new File(testDir), true);
@@ -81,9 +100,83 @@ public class ResumePidListManagerTest {
         // ..however, unprocessed PIDs should be "accepted" - accept all
         Assert.assertTrue("pid:3 should be accepted", manager.accept("pid:3"));
         Assert.assertTrue("pid:4 should be accepted", manager.accept("pid:4"));
+        pidList.forEach(manager::completed);
 
         // Starting over again... no PIDs should be accepted - but, accept all
         manager = new ResumePidListManager(new File(testDir), true);
         pidList.forEach(pid -> Assert.assertTrue(pid + " should be accepted", manager.accept(pid)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void acceptOnlyCompleted() {
+        // accepted, but never completed, e.g. because the object failed
+        Assert.assertTrue("pid:1 should be accepted", manager.accept("pid:1"));
+        manager.completed("pid:2");
+
+        manager = new ResumePidListManager(new File(testDir), false);
+        Assert.assertTrue("pid:1 should be accepted", manager.accept("pid:1"));
+        Assert.assertFalse("pid:2 should NOT be accepted", manager.accept("pid:2"));
+    }
+
+    @Test
+    public void tornJournal() throws IOException {
+        manager.completed("pid:1");
+        manager.completed("pid:2");
+        manager.close();
+
+        // a crash while writing a line, after the same PID was recorded twice
+        final Path journal = new File(testDir, ResumePidListManager.JOURNAL_FILE).toPath();
+        Files.write(journal, "pid:1\npid:3".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+        manager = new ResumePidListManager(new File(testDir), false);
+        Assert.assertFalse("pid:1 should NOT be accepted", manager.accept("pid:1"));
+        Assert.assertFalse("pid:2 should NOT be accepted", manager.accept("pid:2"));
+        Assert.assertTrue("pid:3 should be accepted", manager.accept("pid:3"));
+        Assert.assertEquals(Arrays.asList("pid:1", "pid:2"), Files.readAllLines(journal, UTF_8));
+
+        manager.completed("pid:3");
+        Assert.assertEquals(Arrays.asList("pid:1", "pid:2", "pid:3"), Files.readAllLines(journal, UTF_8));
+    }
+
+    @Test
+    public void journalDoesNotGrowWhenResumed() throws IOException {
+        final List<String> pids = IntStream.range(0, 5000).mapToObj(i -> "pid:" + i).collect(Collectors.toList());
+        final Path journal = new File(testDir, ResumePidListManager.JOURNAL_FILE).toPath();
+        for (int run = 0; run < 3; run++) {
+            pids.forEach(manager::completed);
+            manager.close();
+            Assert.assertEquals(pids, Files.readAllLines(journal, UTF_8));
+
+            manager = new ResumePidListManager(new File(testDir), false);
+            pids.forEach(pid -> Assert.assertFalse(pid + " should NOT be accepted", manager.accept(pid)));
+        }
+    }
+
+    @Test
+    public void legacyResumeFileFails() throws IOException {
+        final File pidDir = tempDir.newFolder("pid");
+        Files.write(new File(pidDir, "resume.txt").toPath(), Arrays.asList("pid:2", "2"), UTF_8);
+        try {
+            new ResumePidListManager(pidDir, false).close();
+            Assert.fail("resuming from a resume.txt without a journal should fail");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        Assert.assertFalse(new File(pidDir, ResumePidListManager.JOURNAL_FILE).exists());
+    }
+
+    @Test
+    public void legacyResumeFileIgnored() throws IOException {
+        final File pidDir = tempDir.newFolder("pid");
+        Files.write(new File(pidDir, "resume.txt").toPath(), Arrays.asList("pid:2", "2"), UTF_8);
+        try (final ResumePidListManager legacy = new ResumePidListManager(pidDir, false, true)) {
+            pidList.forEach(pid -> Assert.assertTrue(pid + " should be accepted", legacy.accept(pid)));
+            legacy.completed("pid:1");
+        }
+
+        // the new journal is resumed from
+        try (final ResumePidListManager resumed = new ResumePidListManager(pidDir, false)) {
+            Assert.assertFalse("pid:1 should NOT be accepted", resumed.accept("pid:1"));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ *
+ */
+package org.fcrepo.migration.pidlist;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Unit test class for ShardPidListManager
+ */
+public class ShardPidListManagerTest {
+
+    @Test
+    public void eachPidInOneShard() {
+        final List<ShardPidListManager> shards = IntStream.rangeClosed(1, 4)
+                .mapToObj(i -> ShardPidListManager.parse(i + "/4")).collect(Collectors.toList());
+        final int[] counts = new int[4];
+        for (int i = 0; i < 4000; i++) {
+            final String pid = "pid:" + i;
+            int accepted = 0;
+            for (int shard = 0; shard < 4; shard++) {
+                if (shards.get(shard).accept(pid)) {
+                    accepted++;
+                    counts[shard]++;
+                }
+            }
+            Assert.assertEquals(pid + " should be accepted by one shard", 1, accepted);
+        }
+        for (final int count : counts) {
+            Assert.assertTrue("Shards should be roughly balanced: " + count, count > 800 && count < 1200);
+        }
+    }
+
+    @Test
+    public void stableShard() {
+        Assert.assertEquals(ShardPidListManager.shardOf("pid:1", 8), ShardPidListManager.shardOf("pid:1", 8));
+        Assert.assertEquals("shard-2-of-4", ShardPidListManager.parse("2/4").getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidShard() {
+        ShardPidListManager.parse("5/4");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSpec() {
+        ShardPidListManager.parse("2");
+    }
+
+}
@@ -68,4 +68,33 @@ public class UserProvidedPidListManagerTest {
         Assert.assertFalse("'bad' should NOT be accepted", manager.accept("bad"));
         Assert.assertFalse("'junk' should NOT be accepted", manager.accept("junk"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void finishedProcessingAllPids() {
+        Assert.assertFalse(manager.finishedProcessingAllPids());
+        manager.accept("pid:1");
+        manager.accept("pid:1");
+        manager.accept("bad");
+        manager.accept("pid:3");
+        manager.accept("pid:2");
+        Assert.assertFalse(manager.finishedProcessingAllPids());
+        manager.accept("pid:4");
+        Assert.assertTrue(manager.finishedProcessingAllPids());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blankLinesOnly() throws Exception {
+        final BufferedWriter writer = new BufferedWriter(new FileWriter(pidListFile));
+        writer.write("\n\n");
+        writer.close();
+
+        new UserProvidedPidListManager(pidListFile);
+    }
+
+    @Test
+    public void finishedProcessingAllPidsAcceptAll() {
+        manager = new UserProvidedPidListManager(null);
+        pidList.forEach(manager::accept);
+        Assert.assertFalse(manager.finishedProcessingAllPids());
+    }
+}